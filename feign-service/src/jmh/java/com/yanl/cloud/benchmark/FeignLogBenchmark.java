@@ -0,0 +1,141 @@
+package com.yanl.cloud.benchmark;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.OutputStreamAppender;
+import com.fasterxml.jackson.module.paramnames.ParameterNamesModule;
+import com.yanl.cloud.domain.CommonResult;
+import com.yanl.cloud.domain.User;
+import com.yanl.cloud.log.SampledFeignLogger;
+import com.yanl.cloud.service.UserService;
+import feign.Client;
+import feign.Feign;
+import feign.Logger;
+import feign.Response;
+import feign.slf4j.Slf4jLogger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.http.HttpMessageConverters;
+import org.springframework.cloud.openfeign.support.ResponseEntityDecoder;
+import org.springframework.cloud.openfeign.support.SpringDecoder;
+import org.springframework.cloud.openfeign.support.SpringMvcContract;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 比较Feign调用日志的开销，请求通过直接返回固定响应的Client发出，日志写入丢弃输出的Appender：
+ * NONE为不输出日志；SLF4J_FULL为原来的Slf4jLogger + FULL（debug级别开启）；
+ * SAMPLED_BASIC、SAMPLED_FULL为SampledFeignLogger的默认配置（BASIC，1%抽样）和全部输出的FULL
+ * mvn -Pbenchmark test-compile exec:exec -Dbenchmark.args="FeignLog -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 10, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FeignLogBenchmark {
+
+    private static final byte[] BODY = ("{\"data\":{\"id\":1,\"username\":\"ly\",\"password\":\"5211\",\"version\":1},"
+            + "\"msg\":\"操作成功\",\"code\":200}").getBytes(StandardCharsets.UTF_8);
+
+    @Param({"NONE", "SLF4J_FULL", "SAMPLED_BASIC", "SAMPLED_FULL"})
+    private String logging;
+
+    private SampledFeignLogger sampledLogger;
+
+    private UserService userService;
+
+    @Setup
+    public void setup() {
+        discardLogs();
+        Client client = (request, options) -> Response.builder()
+                .status(200)
+                .reason("OK")
+                .headers(Collections.singletonMap("Content-Type", Collections.singletonList("application/json")))
+                .body(BODY)
+                .request(request)
+                .build();
+        HttpMessageConverters converters = new HttpMessageConverters(new MappingJackson2HttpMessageConverter(
+                Jackson2ObjectMapperBuilder.json().modulesToInstall(new ParameterNamesModule()).build()));
+        Feign.Builder builder = Feign.builder()
+                .client(client)
+                .contract(new SpringMvcContract())
+                .decoder(new ResponseEntityDecoder(new SpringDecoder(() -> converters)));
+        switch (logging) {
+            case "SLF4J_FULL":
+                builder.logger(new Slf4jLogger(UserService.class)).logLevel(Logger.Level.FULL);
+                break;
+            case "SAMPLED_BASIC":
+                sampledLogger = new SampledFeignLogger(Logger.Level.BASIC, "", 0.01, 512, 10000);
+                builder.logger(sampledLogger).logLevel(Logger.Level.FULL);
+                break;
+            case "SAMPLED_FULL":
+                sampledLogger = new SampledFeignLogger(Logger.Level.FULL, "", 1, 512, 10000);
+                builder.logger(sampledLogger).logLevel(Logger.Level.FULL);
+                break;
+            default:
+                builder.logLevel(Logger.Level.NONE);
+        }
+        userService = builder.target(UserService.class, "http://user-service");
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (sampledLogger != null) {
+            sampledLogger.close();
+        }
+    }
+
+    @Benchmark
+    public CommonResult<User> getUser() {
+        return userService.getUser(1L);
+    }
+
+    /**
+     * 日志照常格式化和编码，但不写入控制台，只比较日志本身的开销；Slf4jLogger按debug级别输出
+     */
+    private static void discardLogs() {
+        LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(context);
+        encoder.setPattern("%d %-5level [%thread] %logger - %msg%n");
+        encoder.start();
+        OutputStreamAppender<ILoggingEvent> appender = new OutputStreamAppender<>();
+        appender.setContext(context);
+        appender.setEncoder(encoder);
+        appender.setOutputStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        });
+        appender.start();
+        ch.qos.logback.classic.Logger root = context.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME);
+        root.detachAndStopAllAppenders();
+        root.addAppender(appender);
+        root.setLevel(Level.INFO);
+        context.getLogger(UserService.class).setLevel(Level.DEBUG);
+    }
+}
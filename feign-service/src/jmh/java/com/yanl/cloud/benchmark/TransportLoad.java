@@ -0,0 +1,168 @@
+package com.yanl.cloud.benchmark;
+
+import com.fasterxml.jackson.module.paramnames.ParameterNamesModule;
+import com.sun.net.httpserver.HttpServer;
+import com.yanl.cloud.domain.CommonResult;
+import com.yanl.cloud.domain.User;
+import com.yanl.cloud.async.WebClientAsyncClient;
+import com.yanl.cloud.async.WebClientTransport;
+import com.yanl.cloud.log.SampledFeignLogger;
+import com.yanl.cloud.service.UserAsyncService;
+import com.yanl.cloud.service.UserService;
+import feign.AsyncFeign;
+import feign.Client;
+import feign.Feign;
+import feign.Logger;
+import feign.Request;
+import org.springframework.boot.autoconfigure.http.HttpMessageConverters;
+import org.springframework.cloud.openfeign.support.ResponseEntityDecoder;
+import org.springframework.cloud.openfeign.support.SpringDecoder;
+import org.springframework.cloud.openfeign.support.SpringMvcContract;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongFunction;
+
+/**
+ * 异步客户端传输层压测：本地启动一个user-service桩（com.sun.net.httpserver），用相同并发分别压测
+ * 原来同步@FeignClient使用的HttpURLConnection、UserAsyncService（AsyncFeign + WebClientAsyncClient）使用WebClient默认的全局连接池，
+ * 以及WebClientTransport按user.feign.transport.*配置的独立连接池，比较吞吐和p99
+ * mvn -Pbenchmark test-compile exec:exec -Dbenchmark.main=com.yanl.cloud.benchmark.TransportLoad \
+ *     -Dbenchmark.args="50 15 5 20"
+ * 参数：并发数 每种传输的秒数 [桩的响应延迟毫秒数] [WebClientTransport的max-connections，默认50]
+ * 压测线程同步等待每个CompletableFuture，保证各传输的并发数相同；不经过RequestCoalescer，避免相同id的调用被合并
+ * 桩只支持HTTP/1.1，h2c需要开启user.http2c.enabled的user-service，不在这里比较
+ */
+public class TransportLoad {
+
+    private static final byte[] BODY = ("{\"data\":{\"id\":1,\"username\":\"ly\",\"password\":\"5211\",\"version\":1},"
+            + "\"msg\":\"操作成功\",\"code\":200}").getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * 与Boot配置的ObjectMapper一样注册ParameterNamesModule，User只能通过构造器创建
+     */
+    private static final HttpMessageConverters converters =
+            new HttpMessageConverters(new MappingJackson2HttpMessageConverter(Jackson2ObjectMapperBuilder.json()
+                    .modulesToInstall(new ParameterNamesModule()).build()));
+
+    private static final SampledFeignLogger logger = new SampledFeignLogger(Logger.Level.NONE, "", 0, 0, 16);
+
+    public static void main(String[] args) throws Exception {
+        int clients = Integer.parseInt(args[0]);
+        int seconds = Integer.parseInt(args[1]);
+        long delayMillis = args.length > 2 ? Long.parseLong(args[2]) : 0;
+        MockEnvironment environment = new MockEnvironment();
+        if (args.length > 3) {
+            environment.setProperty("user.feign.transport.default.max-connections", args[3]);
+        }
+        HttpServer server = stub(delayMillis);
+        String url = "http://127.0.0.1:" + server.getAddress().getPort();
+        WebClientTransport transport = new WebClientTransport(environment, "user-service");
+        try {
+            UserService blocking = Feign.builder()
+                    .client(new Client.Default(null, null))
+                    .contract(new SpringMvcContract())
+                    .decoder(new ResponseEntityDecoder(new SpringDecoder(() -> converters)))
+                    .target(UserService.class, url);
+            run("HttpURLConnection (sync Feign)", blocking::getUser, clients, seconds);
+            UserAsyncService shared = async(WebClient.create(), url);
+            run("WebClient global pool", id -> shared.getUser(id).join(), clients, seconds);
+            UserAsyncService pooled = async(WebClient.builder().clientConnector(transport.getConnector()).build(), url);
+            run("WebClientTransport pool", id -> pooled.getUser(id).join(), clients, seconds);
+        } finally {
+            transport.close();
+            logger.close();
+            server.stop(0);
+        }
+    }
+
+    private static UserAsyncService async(WebClient webClient, String url) {
+        return AsyncFeign.asyncBuilder()
+                .client(new WebClientAsyncClient(webClient, logger))
+                .contract(new SpringMvcContract())
+                .decoder(new ResponseEntityDecoder(new SpringDecoder(() -> converters)))
+                .options(new Request.Options(10, TimeUnit.SECONDS, 10, TimeUnit.SECONDS, false))
+                .target(UserAsyncService.class, url);
+    }
+
+    private static void run(String name, LongFunction<CommonResult<User>> call, int clients, int seconds) throws InterruptedException {
+        // 预热，建立连接并完成类加载
+        load(call, clients, 2, new AtomicLong(), new AtomicLong(), new ConcurrentLinkedQueue<>());
+        AtomicLong ok = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+        ConcurrentLinkedQueue<Long> latencies = new ConcurrentLinkedQueue<>();
+        load(call, clients, seconds, ok, failed, latencies);
+        long[] sorted = latencies.stream().mapToLong(Long::longValue).toArray();
+        Arrays.sort(sorted);
+        System.out.printf("%s clients=%d ok=%d failed=%d rps=%.1f p50=%.1fms p99=%.1fms%n", name, clients,
+                ok.get(), failed.get(), ok.get() / (double) seconds, millis(sorted, 0.5), millis(sorted, 0.99));
+    }
+
+    private static void load(LongFunction<CommonResult<User>> call, int clients, int seconds, AtomicLong ok, AtomicLong failed,
+                             ConcurrentLinkedQueue<Long> latencies) throws InterruptedException {
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        Thread[] threads = new Thread[clients];
+        for (int i = 0; i < clients; i++) {
+            threads[i] = new Thread(() -> {
+                while (System.nanoTime() < end) {
+                    long start = System.nanoTime();
+                    try {
+                        CommonResult<User> result = call.apply(1L + ThreadLocalRandom.current().nextInt(3));
+                        if (result.getCode() == 200) {
+                            ok.incrementAndGet();
+                        } else {
+                            failed.incrementAndGet();
+                        }
+                    } catch (RuntimeException e) {
+                        failed.incrementAndGet();
+                    }
+                    latencies.add(System.nanoTime() - start);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    /**
+     * 本地的user-service桩，按指定延迟返回固定用户
+     */
+    private static HttpServer stub(long delayMillis) throws IOException {
+        // 关闭Nagle算法，否则响应头和响应体分开写出时，每个请求都会多等一次延迟ACK
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/user", exchange -> {
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, BODY.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(BODY);
+            }
+        });
+        server.start();
+        return server;
+    }
+
+    private static double millis(long[] sorted, double percentile) {
+        return sorted.length == 0 ? 0 : sorted[(int) (sorted.length * percentile)] / 1e6;
+    }
+}
@@ -0,0 +1,95 @@
+package com.yanl.cloud.async;
+
+import com.yanl.cloud.log.SampledFeignLogger;
+import feign.AsyncClient;
+import feign.Request;
+import feign.Response;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AsyncFeign的传输层，通过WebClient（Reactor Netty）发送请求，等待响应时不占用线程
+ * webClient为@LoadBalanced，url中的服务名由Ribbon选择实例；响应体读取完成后再交给Feign解码
+ * Request.Options的readTimeout作为整个请求的超时时间
+ * AsyncFeign不会对异步响应调用logger，调用日志在这里输出
+ */
+public class WebClientAsyncClient implements AsyncClient<Object> {
+
+    private final WebClient webClient;
+
+    private final SampledFeignLogger logger;
+
+    public WebClientAsyncClient(WebClient webClient, SampledFeignLogger logger) {
+        this.webClient = webClient;
+        this.logger = logger;
+    }
+
+    @Override
+    public CompletableFuture<Response> execute(Request request, Request.Options options, Optional<Object> requestContext) {
+        WebClient.RequestBodySpec spec = webClient.method(HttpMethod.valueOf(request.httpMethod().name()))
+                .uri(URI.create(request.url()))
+                .headers(headers -> request.headers().forEach((name, values) -> headers.addAll(name, new ArrayList<>(values))));
+        if (request.body() != null) {
+            spec.body(BodyInserters.fromValue(request.body()));
+        }
+        String configKey = configKey(request);
+        long start = System.nanoTime();
+        return spec.exchange()
+                .flatMap(response -> response.bodyToMono(byte[].class)
+                        .defaultIfEmpty(new byte[0])
+                        .map(body -> toResponse(request, response, body)))
+                .timeout(Duration.ofMillis(options.readTimeoutMillis()))
+                .map(response -> logResponse(configKey, response, elapsedMillis(start)))
+                .doOnError(e -> logger.logError(configKey, e, elapsedMillis(start)))
+                .toFuture();
+    }
+
+    private Response logResponse(String configKey, Response response, long elapsedTime) {
+        try {
+            return logger.logResponse(configKey, response, elapsedTime);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static long elapsedMillis(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    private static String configKey(Request request) {
+        if (request.requestTemplate() == null || request.requestTemplate().methodMetadata() == null) {
+            return request.url();
+        }
+        return request.requestTemplate().methodMetadata().configKey();
+    }
+
+    private Response toResponse(Request request, ClientResponse response, byte[] body) {
+        HttpStatus status = HttpStatus.resolve(response.rawStatusCode());
+        Map<String, Collection<String>> headers = new LinkedHashMap<>();
+        HttpHeaders httpHeaders = response.headers().asHttpHeaders();
+        httpHeaders.forEach(headers::put);
+        return Response.builder()
+                .status(response.rawStatusCode())
+                .reason(status == null ? null : status.getReasonPhrase())
+                .headers(headers)
+                .body(body)
+                .request(request)
+                .build();
+    }
+}
@@ -0,0 +1,58 @@
+package com.yanl.cloud.async;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.env.Environment;
+import org.springframework.http.client.reactive.ClientHttpConnector;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+
+/**
+ * 异步客户端的传输层，每个客户端有独立的Reactor Netty连接池，代替WebClient默认共享的全局连接池：
+ * 1. 连接按host:port复用，每个实例最多max-connections个连接，超过后请求排队等待；空闲超过max-idle-seconds的连接关闭，
+ *    应小于user-service的keep-alive超时（Tomcat默认20秒），避免复用已被服务端关闭的连接
+ * 2. http2为true时使用h2c（HTTP/2明文，不经过Upgrade），请求在连接上多路复用；
+ *    要求user-service开启user.http2c.enabled，否则请求会失败
+ * 配置为user.feign.transport.{客户端名称}.*，没有配置的项使用user.feign.transport.default.*
+ */
+@Slf4j
+public class WebClientTransport {
+
+    private static final String PREFIX = "user.feign.transport.";
+
+    private final ConnectionProvider connectionProvider;
+
+    private final ClientHttpConnector connector;
+
+    public WebClientTransport(Environment environment, String name) {
+        boolean http2 = property(environment, name, "http2", Boolean.class, false);
+        int maxConnections = property(environment, name, "max-connections", Integer.class, 50);
+        long maxIdle = property(environment, name, "max-idle-seconds", Long.class, 15L);
+        log.info("客户端 {} 使用独立连接池，HTTP/2：{}，最大连接数：{}，最大空闲时间：{}s", name, http2, maxConnections, maxIdle);
+        this.connectionProvider = ConnectionProvider.builder(name)
+                .maxConnections(maxConnections)
+                .maxIdleTime(Duration.ofSeconds(maxIdle))
+                .build();
+        HttpClient httpClient = HttpClient.create(connectionProvider);
+        if (http2) {
+            httpClient = httpClient.protocol(HttpProtocol.H2C);
+        }
+        this.connector = new ReactorClientHttpConnector(httpClient);
+    }
+
+    public ClientHttpConnector getConnector() {
+        return connector;
+    }
+
+    public void close() {
+        connectionProvider.dispose();
+    }
+
+    private static <T> T property(Environment environment, String name, String key, Class<T> type, T defaultValue) {
+        T value = environment.getProperty(PREFIX + name + "." + key, type);
+        return value != null ? value : environment.getProperty(PREFIX + "default." + key, type, defaultValue);
+    }
+}
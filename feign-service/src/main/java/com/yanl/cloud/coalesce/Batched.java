@@ -0,0 +1,38 @@
+package com.yanl.cloud.coalesce;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 把windowMillis内的并发调用合并为一次批量调用，由RequestCoalescer处理
+ * 被注解的方法只有一个参数，批量方法的参数为这些参数组成的List，返回CompletableFuture<CommonResult<List<T>>>，
+ * 按元素的keyProperty属性把结果分给对应的调用方；批量结果中没有的参数，对应调用返回data为null的结果，与单个调用查不到时一致
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Batched {
+
+    /**
+     * 同一接口中批量方法的名称
+     */
+    String method();
+
+    /**
+     * 批量结果元素中与调用参数对应的属性
+     */
+    String keyProperty() default "id";
+
+    /**
+     * 一次批量调用最多包含的参数个数，达到后立即发送
+     */
+    int maxSize() default 50;
+
+    /**
+     * 第一个调用到达后等待的时间
+     */
+    long windowMillis() default 2;
+}
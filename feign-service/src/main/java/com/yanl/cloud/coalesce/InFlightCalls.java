@@ -0,0 +1,42 @@
+package com.yanl.cloud.coalesce;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * 一个@SingleFlight方法进行中的调用，按参数列表区分
+ * 调用结束后先移除再返回结果，之后到达的调用重新发送请求，不会读到旧的结果
+ */
+class InFlightCalls {
+
+    private final ConcurrentHashMap<List<Object>, CompletableFuture<Object>> calls = new ConcurrentHashMap<>();
+
+    private final Function<Object[], CompletableFuture<Object>> call;
+
+    InFlightCalls(Function<Object[], CompletableFuture<Object>> call) {
+        this.call = call;
+    }
+
+    CompletableFuture<Object> submit(Object[] args) {
+        List<Object> key = args == null ? Collections.emptyList() : Arrays.asList(args);
+        CompletableFuture<Object> shared = new CompletableFuture<>();
+        CompletableFuture<Object> existing = calls.putIfAbsent(key, shared);
+        if (existing == null) {
+            call.apply(args).whenComplete((result, error) -> {
+                calls.remove(key, shared);
+                if (error != null) {
+                    shared.completeExceptionally(error);
+                } else {
+                    shared.complete(result);
+                }
+            });
+            existing = shared;
+        }
+        // 每个调用方得到单独的future，取消或complete不影响其他调用方
+        return existing.thenApply(Function.identity());
+    }
+}
@@ -0,0 +1,108 @@
+package com.yanl.cloud.coalesce;
+
+import com.yanl.cloud.domain.CommonResult;
+import org.springframework.beans.PropertyAccessorFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * 一个@Batched方法的批量合并，pending中为等待发送的参数及其调用方，相同参数只发送一次
+ * 第一个调用到达时开始计时，windowMillis后或参数个数达到maxSize时发送
+ */
+class MicroBatcher {
+
+    private final Function<List<Object>, CompletableFuture<Object>> batchCall;
+
+    private final String keyProperty;
+
+    private final int maxSize;
+
+    private final long windowMillis;
+
+    private final ScheduledExecutorService scheduler;
+
+    private Map<Object, List<CompletableFuture<Object>>> pending = new LinkedHashMap<>();
+
+    MicroBatcher(Function<List<Object>, CompletableFuture<Object>> batchCall, Batched batched, ScheduledExecutorService scheduler) {
+        this.batchCall = batchCall;
+        this.keyProperty = batched.keyProperty();
+        this.maxSize = batched.maxSize();
+        this.windowMillis = batched.windowMillis();
+        this.scheduler = scheduler;
+    }
+
+    CompletableFuture<Object> submit(Object key) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        Map<Object, List<CompletableFuture<Object>>> full = null;
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                Map<Object, List<CompletableFuture<Object>>> batch = pending;
+                scheduler.schedule(() -> flush(batch), windowMillis, TimeUnit.MILLISECONDS);
+            }
+            pending.computeIfAbsent(key, k -> new ArrayList<>(1)).add(future);
+            if (pending.size() >= maxSize) {
+                full = pending;
+                pending = new LinkedHashMap<>();
+            }
+        }
+        if (full != null) {
+            send(full);
+        }
+        return future;
+    }
+
+    /**
+     * 计时结束，batch已因达到maxSize发送时不再处理
+     */
+    private void flush(Map<Object, List<CompletableFuture<Object>>> batch) {
+        synchronized (this) {
+            if (pending != batch) {
+                return;
+            }
+            pending = new LinkedHashMap<>();
+        }
+        send(batch);
+    }
+
+    private void send(Map<Object, List<CompletableFuture<Object>>> batch) {
+        batchCall.apply(new ArrayList<>(batch.keySet())).whenComplete((result, error) -> {
+            if (error == null) {
+                error = dispatch(batch, (CommonResult<?>) result);
+            }
+            if (error != null) {
+                for (List<CompletableFuture<Object>> futures : batch.values()) {
+                    for (CompletableFuture<Object> future : futures) {
+                        future.completeExceptionally(error);
+                    }
+                }
+            }
+        });
+    }
+
+    private Throwable dispatch(Map<Object, List<CompletableFuture<Object>>> batch, CommonResult<?> result) {
+        if (result == null || result.getCode() == null || result.getCode() != 200 || !(result.getData() instanceof Collection)) {
+            return new IllegalStateException("批量调用失败：" + (result == null ? null : result.getMsg()));
+        }
+        Map<Object, Object> items = new HashMap<>();
+        for (Object item : (Collection<?>) result.getData()) {
+            items.put(PropertyAccessorFactory.forBeanPropertyAccess(item).getPropertyValue(keyProperty), item);
+        }
+        // 批量结果中没有的参数与单个调用查不到时一样，data为null，不走降级
+        batch.forEach((key, futures) -> {
+            CommonResult<Object> itemResult = new CommonResult<>(items.get(key));
+            for (CompletableFuture<Object> future : futures) {
+                future.complete(itemResult);
+            }
+        });
+        return null;
+    }
+}
@@ -0,0 +1,125 @@
+package com.yanl.cloud.coalesce;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Function;
+
+/**
+ * 按方法上的@SingleFlight、@Batched为Feign客户端添加请求合并，wrap返回实现同一接口的代理，没有注解的方法直接调用target
+ * 只支持返回CompletableFuture的方法（AsyncFeign客户端），同时有两个注解时先按参数合并，再进行批量合并
+ * singleFlight、batching为false时忽略对应的注解
+ */
+@Slf4j
+public class RequestCoalescer {
+
+    private final boolean singleFlight;
+
+    private final boolean batching;
+
+    private final ScheduledExecutorService scheduler;
+
+    public RequestCoalescer(boolean singleFlight, boolean batching) {
+        this.singleFlight = singleFlight;
+        this.batching = batching;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "feign-batcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T wrap(Class<T> type, T target) {
+        Map<Method, Function<Object[], CompletableFuture<Object>>> calls = new HashMap<>();
+        for (Method method : type.getMethods()) {
+            Function<Object[], CompletableFuture<Object>> call = null;
+            Batched batched = method.getAnnotation(Batched.class);
+            if (batching && batched != null) {
+                checkMethod(method, "@Batched");
+                if (method.getParameterCount() != 1) {
+                    throw new IllegalStateException("@Batched方法只能有一个参数：" + method);
+                }
+                Method batchMethod = batchMethod(type, batched.method());
+                MicroBatcher batcher = new MicroBatcher(keys -> invoke(target, batchMethod, new Object[]{keys}), batched, scheduler);
+                call = args -> batcher.submit(args[0]);
+            }
+            if (singleFlight && method.isAnnotationPresent(SingleFlight.class)) {
+                checkMethod(method, "@SingleFlight");
+                Function<Object[], CompletableFuture<Object>> next = call != null ? call : args -> invoke(target, method, args);
+                call = new InFlightCalls(next)::submit;
+            }
+            if (call != null) {
+                log.info("{}#{} 开启请求合并，single-flight：{}，批量方法：{}", type.getSimpleName(), method.getName(),
+                        singleFlight && method.isAnnotationPresent(SingleFlight.class), batching && batched != null ? batched.method() : null);
+                calls.put(method, call);
+            }
+        }
+        if (calls.isEmpty()) {
+            return target;
+        }
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            Function<Object[], CompletableFuture<Object>> call = calls.get(method);
+            if (call != null) {
+                return call.apply(args);
+            }
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        });
+    }
+
+    /**
+     * 合并的调用共享同一个结果，只允许返回CompletableFuture的GET方法
+     */
+    private static void checkMethod(Method method, String annotation) {
+        if (!CompletableFuture.class.equals(method.getReturnType())) {
+            throw new IllegalStateException(annotation + "方法需返回CompletableFuture：" + method);
+        }
+        RequestMapping mapping = AnnotatedElementUtils.findMergedAnnotation(method, RequestMapping.class);
+        if (mapping == null || !Arrays.asList(mapping.method()).equals(Arrays.asList(RequestMethod.GET))) {
+            throw new IllegalStateException(annotation + "只能用于GET方法：" + method);
+        }
+    }
+
+    private static Method batchMethod(Class<?> type, String name) {
+        for (Method method : type.getMethods()) {
+            if (method.getName().equals(name) && method.getParameterCount() == 1 && List.class.equals(method.getParameterTypes()[0])) {
+                checkMethod(method, "@Batched批量");
+                return method;
+            }
+        }
+        throw new IllegalStateException(type.getName() + "中没有批量方法：" + name + "(List)");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static CompletableFuture<Object> invoke(Object target, Method method, Object[] args) {
+        try {
+            return (CompletableFuture<Object>) method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            CompletableFuture<Object> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e.getCause());
+            return failed;
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
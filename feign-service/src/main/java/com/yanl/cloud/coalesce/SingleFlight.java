@@ -0,0 +1,17 @@
+package com.yanl.cloud.coalesce;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 参数相同的并发调用合并为一次请求，进行中的调用返回前，后续调用方等待并共享它的结果
+ * 只能用于GET方法，由RequestCoalescer处理
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface SingleFlight {
+}
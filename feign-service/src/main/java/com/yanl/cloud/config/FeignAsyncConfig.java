@@ -0,0 +1,103 @@
+package com.yanl.cloud.config;
+
+import com.yanl.cloud.async.WebClientAsyncClient;
+import com.yanl.cloud.async.WebClientTransport;
+import com.yanl.cloud.coalesce.RequestCoalescer;
+import com.yanl.cloud.log.SampledFeignLogger;
+import com.yanl.cloud.service.UserAsyncService;
+import com.yanl.cloud.service.UserShardClient;
+import com.yanl.cloud.service.impl.FallbackUserAsyncService;
+import com.yanl.cloud.service.impl.FallbackUserShardClient;
+import com.yanl.cloud.service.impl.UserFallbackService;
+import com.yanl.cloud.service.impl.UserShardFallbackService;
+import feign.AsyncFeign;
+import feign.Request;
+import feign.RequestInterceptor;
+import org.springframework.beans.factory.ObjectFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.http.HttpMessageConverters;
+import org.springframework.cloud.client.loadbalancer.LoadBalanced;
+import org.springframework.cloud.openfeign.support.ResponseEntityDecoder;
+import org.springframework.cloud.openfeign.support.SpringDecoder;
+import org.springframework.cloud.openfeign.support.SpringEncoder;
+import org.springframework.cloud.openfeign.support.SpringMvcContract;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+@Configuration
+public class FeignAsyncConfig {
+
+    @Bean(destroyMethod = "close")
+    public WebClientTransport userServiceTransport(Environment environment){
+        return new WebClientTransport(environment, "user-service");
+    }
+
+    @Bean(destroyMethod = "close")
+    public WebClientTransport userShardTransport(Environment environment){
+        return new WebClientTransport(environment, "user-shard-service");
+    }
+
+    @Bean
+    @LoadBalanced
+    public WebClient.Builder loadBalancedWebClientBuilder(WebClientTransport userServiceTransport){
+        return WebClient.builder().clientConnector(userServiceTransport.getConnector());
+    }
+
+    @Bean(destroyMethod = "close")
+    public RequestCoalescer requestCoalescer(@Value("${user.feign.coalescing.single-flight:true}") boolean singleFlight,
+                                             @Value("${user.feign.coalescing.batching:false}") boolean batching){
+        return new RequestCoalescer(singleFlight, batching);
+    }
+
+    /**
+     * 异步的user-service客户端，注解解析、编解码和日志与@FeignClient相同
+     * @return
+     */
+    @Bean
+    public UserAsyncService userAsyncService(WebClient.Builder loadBalancedWebClientBuilder,
+                                             ObjectFactory<HttpMessageConverters> messageConverters,
+                                             ObjectProvider<RequestInterceptor> requestInterceptors,
+                                             UserFallbackService userFallbackService,
+                                             SampledFeignLogger feignLogger,
+                                             RequestCoalescer requestCoalescer,
+                                             @Value("${user.feign.async.timeout-ms:1000}") long timeout){
+        UserAsyncService client = AsyncFeign.asyncBuilder()
+                .client(new WebClientAsyncClient(loadBalancedWebClientBuilder.build(), feignLogger))
+                .contract(new SpringMvcContract())
+                .encoder(new SpringEncoder(messageConverters))
+                .decoder(new ResponseEntityDecoder(new SpringDecoder(messageConverters)))
+                .requestInterceptors(requestInterceptors.orderedStream().collect(Collectors.toList()))
+                .options(new Request.Options(timeout, TimeUnit.MILLISECONDS, timeout, TimeUnit.MILLISECONDS, false))
+                .target(UserAsyncService.class, "http://user-service");
+        // 合并后的调用失败时，每个调用方分别降级
+        return new FallbackUserAsyncService(requestCoalescer.wrap(UserAsyncService.class, client), userFallbackService);
+    }
+
+    /**
+     * 按分片直连的异步客户端，请求地址为UserShardLocator返回的实例地址，因此使用不经过Ribbon的WebClient
+     * @return
+     */
+    @Bean
+    public UserShardClient userShardClient(WebClientTransport userShardTransport,
+                                           ObjectFactory<HttpMessageConverters> messageConverters,
+                                           ObjectProvider<RequestInterceptor> requestInterceptors,
+                                           UserShardFallbackService userShardFallbackService,
+                                           SampledFeignLogger feignLogger,
+                                           @Value("${user.feign.async.timeout-ms:1000}") long timeout){
+        UserShardClient client = AsyncFeign.asyncBuilder()
+                .client(new WebClientAsyncClient(WebClient.builder().clientConnector(userShardTransport.getConnector()).build(), feignLogger))
+                .contract(new SpringMvcContract())
+                .encoder(new SpringEncoder(messageConverters))
+                .decoder(new ResponseEntityDecoder(new SpringDecoder(messageConverters)))
+                .requestInterceptors(requestInterceptors.orderedStream().collect(Collectors.toList()))
+                .options(new Request.Options(timeout, TimeUnit.MILLISECONDS, timeout, TimeUnit.MILLISECONDS, false))
+                .target(UserShardClient.class, "http://user-service");
+        return new FallbackUserShardClient(client, userShardFallbackService);
+    }
+}
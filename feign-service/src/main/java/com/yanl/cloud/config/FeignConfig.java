@@ -1,14 +1,33 @@
 package com.yanl.cloud.config;
 
+import com.yanl.cloud.log.SampledFeignLogger;
 import feign.Logger;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 @Configuration
 public class FeignConfig {
 
+    /**
+     * 让Feign把所有调用交给feignLogger，每个方法实际的日志级别见user.feign.logging
+     * @return
+     */
     @Bean
     Logger.Level feignLoggerLevel(){
         return Logger.Level.FULL;
     }
+
+    /**
+     * 抽样、异步输出的Feign日志，所有FeignClient共用
+     * @return
+     */
+    @Bean(destroyMethod = "close")
+    SampledFeignLogger feignLogger(@Value("${user.feign.logging.level:BASIC}") Logger.Level level,
+                       @Value("${user.feign.logging.method-levels:}") String methodLevels,
+                       @Value("${user.feign.logging.sample-rate:0.01}") double sampleRate,
+                       @Value("${user.feign.logging.max-body-bytes:512}") int maxBodyBytes,
+                       @Value("${user.feign.logging.queue-size:10000}") int queueSize){
+        return new SampledFeignLogger(level, methodLevels, sampleRate, maxBodyBytes, queueSize);
+    }
 }
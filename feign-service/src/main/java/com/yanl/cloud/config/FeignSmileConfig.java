@@ -0,0 +1,38 @@
+package com.yanl.cloud.config;
+
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import feign.RequestInterceptor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+
+/**
+ * Feign调用user-service时优先使用Smile（二进制JSON）编码，见user-service的SmileConfig
+ * 请求头Accept中Smile优先，SpringDecoder按响应的Content-Type选择转换器，user-service未开启Smile时返回JSON，同样可以解码；请求体仍使用JSON编码
+ * jackson-dataformat-smile在classpath中时默认的Smile转换器没有使用Boot配置的ObjectMapper，无法通过构造器创建User，
+ * 这里定义的转换器由HttpMessageConverters放在默认Smile转换器之前，位于JSON之后，feign-service自己的接口仍默认返回JSON
+ * RequestInterceptor定义在父上下文中，所有FeignClient和UserAsyncService共用
+ */
+@Configuration
+@ConditionalOnProperty(name = "user.smile.enabled", havingValue = "true", matchIfMissing = true)
+public class FeignSmileConfig {
+
+    private static final String ACCEPT = "application/x-jackson-smile, application/json;q=0.9";
+
+    @Bean
+    public MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(Jackson2ObjectMapperBuilder objectMapperBuilder){
+        return new MappingJackson2SmileHttpMessageConverter(objectMapperBuilder.factory(new SmileFactory()).build());
+    }
+
+    @Bean
+    public RequestInterceptor smileAcceptInterceptor(){
+        return template -> {
+            if (!template.headers().containsKey(HttpHeaders.ACCEPT)) {
+                template.header(HttpHeaders.ACCEPT, ACCEPT);
+            }
+        };
+    }
+}
@@ -2,39 +2,70 @@ package com.yanl.cloud.controller;
 
 import com.yanl.cloud.domain.CommonResult;
 import com.yanl.cloud.domain.User;
-import com.yanl.cloud.service.UserService;
+import com.yanl.cloud.service.UserAsyncService;
+import com.yanl.cloud.service.UserShardClient;
+import com.yanl.cloud.shard.UserShardLocator;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
 
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 通过异步的UserAsyncService调用user-service，返回CompletableFuture时Spring MVC按Servlet异步请求处理，
+ * 等待响应期间不占用Tomcat线程；开启分片时按分片直连的UserShardClient同样是异步调用
+ */
 @RestController
 @RequestMapping("/user")
 public class UserFeignController {
 
     @Autowired
-    private UserService userService;
+    private UserAsyncService userAsyncService;
+
+    @Autowired
+    private UserShardClient userShardClient;
+
+    @Autowired
+    private UserShardLocator userShardLocator;
 
     @GetMapping("/{id}")
-    public CommonResult getUser(@PathVariable Long id){
-        return userService.getUser(id);
+    public CompletableFuture<CommonResult<User>> getUser(@PathVariable Long id){
+        String shardUrl = userShardLocator.locate(id);
+        if (shardUrl != null) {
+            return userShardClient.getUser(URI.create(shardUrl), id);
+        }
+        return userAsyncService.getUser(id);
     }
     @PostMapping("/create")
-    public CommonResult create(@RequestBody User user){
-        return userService.create(user);
+    public CompletableFuture<CommonResult> create(@RequestBody User user){
+        String shardUrl = userShardLocator.locate(user.getId());
+        if (shardUrl != null) {
+            return userShardClient.create(URI.create(shardUrl), user);
+        }
+        return userAsyncService.create(user);
     }
 
     @GetMapping("/getUserByName")
-    public CommonResult<User> getUserByName(@RequestParam String name){
-        return userService.getUserByName(name);
+    public CompletableFuture<CommonResult<User>> getUserByName(@RequestParam String name){
+        return userAsyncService.getUserByName(name);
     }
 
     @PostMapping("/update")
-    public CommonResult update(@RequestBody User user){
-        return userService.update(user);
+    public CompletableFuture<CommonResult> update(@RequestBody User user){
+        String shardUrl = userShardLocator.locate(user.getId());
+        if (shardUrl != null) {
+            return userShardClient.update(URI.create(shardUrl), user);
+        }
+        return userAsyncService.update(user);
     }
 
     @PostMapping("/delete/{id}")
-    public CommonResult delete(@PathVariable Long id){
-        return userService.delete(id);
+    public CompletableFuture<CommonResult> delete(@PathVariable Long id){
+        String shardUrl = userShardLocator.locate(id);
+        if (shardUrl != null) {
+            return userShardClient.delete(URI.create(shardUrl), id);
+        }
+        return userAsyncService.delete(id);
     }
 
 
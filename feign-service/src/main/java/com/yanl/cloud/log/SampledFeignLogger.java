@@ -0,0 +1,273 @@
+package com.yanl.cloud.log;
+
+import feign.Logger;
+import feign.Request;
+import feign.Response;
+import feign.Util;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 代替Slf4jLogger + Logger.Level.FULL的Feign日志，适合生产环境：
+ * 1. 每次调用在响应返回后只输出一条key=value格式的日志，BASIC为方法、url、状态码、耗时，HEADERS加上请求头和响应头，
+ *    FULL再加上截断到maxBodyBytes的请求体和响应体；Content-Type不是文本（如Smile）的消息体按十六进制输出
+ * 2. 成功的调用按sampleRate抽样输出，失败的调用（状态码>=400、IO异常）全部输出；未抽中的调用不读取响应体，几乎没有开销
+ * 3. 日志级别按方法配置，methodLevels为逗号分隔的"configKey前缀=级别"，如UserService#getUser=FULL,UserShardClient=NONE，
+ *    匹配最长的前缀，都不匹配时使用defaultLevel
+ * 4. 调用线程只复制需要的数据并放入有界队列，格式化和写日志在单独的线程中执行；队列满时丢弃并计数，不阻塞调用
+ * Feign只在Logger.Level不为NONE时调用日志方法，因此FeignConfig中的Logger.Level需为FULL，实际输出内容由这里决定
+ * AsyncFeign（10.10）没有把logger传给异步响应的处理，异步客户端通过logResponse、logError直接输出
+ */
+public class SampledFeignLogger extends Logger {
+
+    private static final org.slf4j.Logger log = LoggerFactory.getLogger(SampledFeignLogger.class);
+
+    private final Level defaultLevel;
+
+    private final List<Map.Entry<String, Level>> methodLevels = new ArrayList<>();
+
+    private final Map<String, Level> levelCache = new ConcurrentHashMap<>();
+
+    private final double sampleRate;
+
+    private final int maxBodyBytes;
+
+    private final BlockingQueue<Runnable> queue;
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final Thread writer;
+
+    public SampledFeignLogger(Level defaultLevel, String methodLevels, double sampleRate, int maxBodyBytes, int queueSize) {
+        this.defaultLevel = defaultLevel;
+        this.sampleRate = sampleRate;
+        this.maxBodyBytes = maxBodyBytes;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        for (String item : StringUtils.commaDelimitedListToStringArray(methodLevels)) {
+            String[] pair = item.split("=");
+            if (pair.length == 2) {
+                this.methodLevels.add(new AbstractMap.SimpleImmutableEntry<>(pair[0].trim(), Level.valueOf(pair[1].trim().toUpperCase())));
+            }
+        }
+        // 长的前缀优先匹配
+        this.methodLevels.sort((a, b) -> b.getKey().length() - a.getKey().length());
+        this.writer = new Thread(this::write, "feign-log-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    public void close() {
+        writer.interrupt();
+    }
+
+    /**
+     * 请求和响应合并为一条日志，在响应返回后输出
+     */
+    @Override
+    protected void logRequest(String configKey, Level logLevel, Request request) {
+    }
+
+    @Override
+    protected Response logAndRebufferResponse(String configKey, Level logLevel, Response response, long elapsedTime) throws IOException {
+        return logResponse(configKey, response, elapsedTime);
+    }
+
+    @Override
+    protected IOException logIOException(String configKey, Level logLevel, IOException ioe, long elapsedTime) {
+        logError(configKey, ioe, elapsedTime);
+        return ioe;
+    }
+
+    public Response logResponse(String configKey, Response response, long elapsedTime) throws IOException {
+        Level level = levelFor(configKey);
+        boolean failed = response.status() >= 400;
+        if (level == Level.NONE || !failed && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            return response;
+        }
+        Request request = response.request();
+        byte[] requestBody = null;
+        byte[] responseBody = null;
+        if (level == Level.FULL) {
+            requestBody = truncate(request.body());
+            if (response.body() != null) {
+                byte[] body = Util.toByteArray(response.body().asInputStream());
+                response = response.toBuilder().body(body).build();
+                responseBody = truncate(body);
+            }
+        }
+        // Request和Response的请求头不可修改，直接引用即可
+        boolean headers = level.ordinal() >= Level.HEADERS.ordinal();
+        enqueue(new CallEvent(configKey, request.httpMethod().name(), request.url(), response.status(), elapsedTime, failed,
+                headers ? request.headers() : null, headers ? response.headers() : null,
+                requestBody, requestBody != null ? contentType(request.headers()) : null,
+                responseBody, responseBody != null ? contentType(response.headers()) : null));
+        return response;
+    }
+
+    public void logError(String configKey, Throwable error, long elapsedTime) {
+        if (levelFor(configKey) != Level.NONE) {
+            String message = error.toString();
+            enqueue(() -> log.warn("feign.call method={} error=\"{}\" elapsedMs={}", configKey, message, elapsedTime));
+        }
+    }
+
+    @Override
+    protected void logRetry(String configKey, Level logLevel) {
+        if (levelFor(configKey) != Level.NONE) {
+            enqueue(() -> log.info("feign.retry method={}", configKey));
+        }
+    }
+
+    @Override
+    protected void log(String configKey, String format, Object... args) {
+        String message = String.format(format, args);
+        enqueue(() -> log.info("feign.log method={} {}", configKey, message));
+    }
+
+    private Level levelFor(String configKey) {
+        return levelCache.computeIfAbsent(configKey, key -> {
+            for (Map.Entry<String, Level> entry : methodLevels) {
+                if (key.startsWith(entry.getKey())) {
+                    return entry.getValue();
+                }
+            }
+            return defaultLevel;
+        });
+    }
+
+    /**
+     * Request和Response的请求头按名称忽略大小写
+     */
+    private static String contentType(Map<String, Collection<String>> headers) {
+        Collection<String> values = headers.get("Content-Type");
+        return values == null || values.isEmpty() ? null : values.iterator().next();
+    }
+
+    private byte[] truncate(byte[] body) {
+        if (body == null || body.length <= maxBodyBytes) {
+            return body;
+        }
+        byte[] truncated = new byte[maxBodyBytes];
+        System.arraycopy(body, 0, truncated, 0, maxBodyBytes);
+        return truncated;
+    }
+
+    private void enqueue(Runnable event) {
+        if (!queue.offer(event)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    private void write() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                queue.take().run();
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                log.warn("输出Feign日志失败", e);
+            }
+            long count = dropped.getAndSet(0);
+            if (count > 0) {
+                log.warn("日志队列已满，丢弃了{}条Feign日志", count);
+            }
+        }
+    }
+
+    private static class CallEvent implements Runnable {
+        private static final char[] HEX = "0123456789abcdef".toCharArray();
+        private final String configKey;
+        private final String method;
+        private final String url;
+        private final int status;
+        private final long elapsedTime;
+        private final boolean failed;
+        private final Map<String, Collection<String>> requestHeaders;
+        private final Map<String, Collection<String>> responseHeaders;
+        private final byte[] requestBody;
+        private final String requestContentType;
+        private final byte[] responseBody;
+        private final String responseContentType;
+
+        CallEvent(String configKey, String method, String url, int status, long elapsedTime, boolean failed,
+                  Map<String, Collection<String>> requestHeaders, Map<String, Collection<String>> responseHeaders,
+                  byte[] requestBody, String requestContentType, byte[] responseBody, String responseContentType) {
+            this.configKey = configKey;
+            this.method = method;
+            this.url = url;
+            this.status = status;
+            this.elapsedTime = elapsedTime;
+            this.failed = failed;
+            this.requestHeaders = requestHeaders;
+            this.responseHeaders = responseHeaders;
+            this.requestBody = requestBody;
+            this.requestContentType = requestContentType;
+            this.responseBody = responseBody;
+            this.responseContentType = responseContentType;
+        }
+
+        @Override
+        public void run() {
+            StringBuilder line = new StringBuilder(256)
+                    .append("feign.call method=").append(configKey)
+                    .append(" http=").append(method)
+                    .append(" url=").append(url)
+                    .append(" status=").append(status)
+                    .append(" elapsedMs=").append(elapsedTime);
+            if (requestHeaders != null) {
+                line.append(" requestHeaders=").append(requestHeaders)
+                        .append(" responseHeaders=").append(responseHeaders);
+            }
+            if (requestBody != null) {
+                appendBody(line.append(" requestBody="), requestBody, requestContentType);
+            }
+            if (responseBody != null) {
+                appendBody(line.append(" responseBody="), responseBody, responseContentType);
+            }
+            if (failed) {
+                log.warn(line.toString());
+            } else {
+                log.info(line.toString());
+            }
+        }
+
+        /**
+         * 文本按UTF-8输出在引号中，二进制（如Smile）输出为hex:开头的十六进制，避免乱码和控制字符写入日志
+         */
+        private static void appendBody(StringBuilder line, byte[] body, String contentType) {
+            if (isText(contentType)) {
+                line.append('"').append(new String(body, StandardCharsets.UTF_8)).append('"');
+                return;
+            }
+            line.append("hex:");
+            for (byte b : body) {
+                line.append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+            }
+        }
+
+        /**
+         * 没有Content-Type时按文本处理
+         */
+        private static boolean isText(String contentType) {
+            if (contentType == null) {
+                return true;
+            }
+            String type = contentType.toLowerCase();
+            return type.startsWith("text/") || type.contains("json") || type.contains("xml")
+                    || type.startsWith("application/x-www-form-urlencoded");
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.yanl.cloud.service;
+
+import com.yanl.cloud.coalesce.Batched;
+import com.yanl.cloud.coalesce.SingleFlight;
+import com.yanl.cloud.domain.CommonResult;
+import com.yanl.cloud.domain.User;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * UserService的异步版本，接口定义相同，方法返回CompletableFuture，调用线程不等待响应
+ * 不使用@FeignClient，由FeignAsyncConfig通过AsyncFeign创建，请求通过非阻塞的WebClient发送，失败时使用UserFallbackService的结果
+ * 查询方法通过@SingleFlight、@Batched合并并发的请求，开关见user.feign.coalescing
+ */
+public interface UserAsyncService {
+    @PostMapping("/user/create")
+    CompletableFuture<CommonResult> create(@RequestBody User user);
+
+    @SingleFlight
+    @Batched(method = "getUserByIds")
+    @GetMapping("/user/{id}")
+    CompletableFuture<CommonResult<User>> getUser(@PathVariable Long id);
+
+    @GetMapping("/user/getUserByIds")
+    CompletableFuture<CommonResult<List<User>>> getUserByIds(@RequestParam List<Long> ids);
+
+    @SingleFlight
+    @GetMapping("/user/getUserByName")
+    CompletableFuture<CommonResult<User>> getUserByName(@RequestParam String name);
+
+    @PostMapping("/user/update")
+    CompletableFuture<CommonResult> update(@RequestBody User user);
+
+    @PostMapping("/user/delete/{id}")
+    CompletableFuture<CommonResult> delete(@PathVariable Long id);
+}
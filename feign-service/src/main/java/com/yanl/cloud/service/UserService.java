@@ -6,6 +6,8 @@ import com.yanl.cloud.service.impl.UserFallbackService;
 import org.springframework.cloud.openfeign.FeignClient;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.List;
+
 @FeignClient(value = "user-service", fallback = UserFallbackService.class)
 public interface UserService {
     @PostMapping("/user/create")
@@ -14,6 +16,9 @@ public interface UserService {
     @GetMapping("/user/{id}")
     CommonResult<User> getUser(@PathVariable Long id);
 
+    @GetMapping("/user/getUserByIds")
+    CommonResult<List<User>> getUserByIds(@RequestParam List<Long> ids);
+
     @GetMapping("/user/getUserByName")
     CommonResult<User> getUserByName(@RequestParam String name);
 
@@ -0,0 +1,27 @@
+package com.yanl.cloud.service;
+
+import com.yanl.cloud.domain.CommonResult;
+import com.yanl.cloud.domain.User;
+import org.springframework.web.bind.annotation.*;
+
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 直接访问用户所在分片的实例，第一个参数为UserShardLocator返回的实例地址，实际请求地址以参数为准
+ * 与UserAsyncService一样由FeignAsyncConfig通过AsyncFeign创建，请求通过非阻塞的WebClient发送，不经过Ribbon负载均衡，
+ * 失败时使用UserShardFallbackService的结果
+ */
+public interface UserShardClient {
+    @PostMapping("/user/create")
+    CompletableFuture<CommonResult> create(URI shard, @RequestBody User user);
+
+    @GetMapping("/user/{id}")
+    CompletableFuture<CommonResult<User>> getUser(URI shard, @PathVariable Long id);
+
+    @PostMapping("/user/update")
+    CompletableFuture<CommonResult> update(URI shard, @RequestBody User user);
+
+    @PostMapping("/user/delete/{id}")
+    CompletableFuture<CommonResult> delete(URI shard, @PathVariable Long id);
+}
@@ -0,0 +1,73 @@
+package com.yanl.cloud.service.impl;
+
+import com.yanl.cloud.domain.CommonResult;
+import com.yanl.cloud.domain.User;
+import com.yanl.cloud.service.UserAsyncService;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 为异步客户端添加服务降级：请求失败（连接失败、超时、非2xx响应）时返回UserFallbackService中对应方法的结果
+ */
+@Slf4j
+public class FallbackUserAsyncService implements UserAsyncService {
+
+    private final UserAsyncService delegate;
+
+    private final UserFallbackService fallback;
+
+    public FallbackUserAsyncService(UserAsyncService delegate, UserFallbackService fallback) {
+        this.delegate = delegate;
+        this.fallback = fallback;
+    }
+
+    @Override
+    public CompletableFuture<CommonResult> create(User user) {
+        return delegate.create(user).exceptionally(e -> {
+            log.warn("create调用失败，服务降级：{}", e.toString());
+            return fallback.create(user);
+        });
+    }
+
+    @Override
+    public CompletableFuture<CommonResult<User>> getUser(Long id) {
+        return delegate.getUser(id).exceptionally(e -> {
+            log.warn("getUser调用失败，服务降级，id：{}，{}", id, e.toString());
+            return fallback.getUser(id);
+        });
+    }
+
+    @Override
+    public CompletableFuture<CommonResult<List<User>>> getUserByIds(List<Long> ids) {
+        return delegate.getUserByIds(ids).exceptionally(e -> {
+            log.warn("getUserByIds调用失败，服务降级，ids：{}，{}", ids, e.toString());
+            return fallback.getUserByIds(ids);
+        });
+    }
+
+    @Override
+    public CompletableFuture<CommonResult<User>> getUserByName(String name) {
+        return delegate.getUserByName(name).exceptionally(e -> {
+            log.warn("getUserByName调用失败，服务降级，name：{}，{}", name, e.toString());
+            return fallback.getUserByName(name);
+        });
+    }
+
+    @Override
+    public CompletableFuture<CommonResult> update(User user) {
+        return delegate.update(user).exceptionally(e -> {
+            log.warn("update调用失败，服务降级：{}", e.toString());
+            return fallback.update(user);
+        });
+    }
+
+    @Override
+    public CompletableFuture<CommonResult> delete(Long id) {
+        return delegate.delete(id).exceptionally(e -> {
+            log.warn("delete调用失败，服务降级，id：{}，{}", id, e.toString());
+            return fallback.delete(id);
+        });
+    }
+}
@@ -0,0 +1,57 @@
+package com.yanl.cloud.service.impl;
+
+import com.yanl.cloud.domain.CommonResult;
+import com.yanl.cloud.domain.User;
+import com.yanl.cloud.service.UserShardClient;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 为分片直连的异步客户端添加服务降级：请求失败（连接失败、超时、非2xx响应）时返回UserShardFallbackService中对应方法的结果
+ */
+@Slf4j
+public class FallbackUserShardClient implements UserShardClient {
+
+    private final UserShardClient delegate;
+
+    private final UserShardFallbackService fallback;
+
+    public FallbackUserShardClient(UserShardClient delegate, UserShardFallbackService fallback) {
+        this.delegate = delegate;
+        this.fallback = fallback;
+    }
+
+    @Override
+    public CompletableFuture<CommonResult> create(URI shard, User user) {
+        return delegate.create(shard, user).exceptionally(e -> {
+            log.warn("create调用失败，服务降级，分片：{}，{}", shard, e.toString());
+            return fallback.create(shard, user);
+        });
+    }
+
+    @Override
+    public CompletableFuture<CommonResult<User>> getUser(URI shard, Long id) {
+        return delegate.getUser(shard, id).exceptionally(e -> {
+            log.warn("getUser调用失败，服务降级，分片：{}，id：{}，{}", shard, id, e.toString());
+            return fallback.getUser(shard, id);
+        });
+    }
+
+    @Override
+    public CompletableFuture<CommonResult> update(URI shard, User user) {
+        return delegate.update(shard, user).exceptionally(e -> {
+            log.warn("update调用失败，服务降级，分片：{}，{}", shard, e.toString());
+            return fallback.update(shard, user);
+        });
+    }
+
+    @Override
+    public CompletableFuture<CommonResult> delete(URI shard, Long id) {
+        return delegate.delete(shard, id).exceptionally(e -> {
+            log.warn("delete调用失败，服务降级，分片：{}，id：{}，{}", shard, id, e.toString());
+            return fallback.delete(shard, id);
+        });
+    }
+}
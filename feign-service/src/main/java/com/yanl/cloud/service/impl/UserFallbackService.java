@@ -5,6 +5,7 @@ import com.yanl.cloud.domain.User;
 import com.yanl.cloud.service.UserService;
 import org.springframework.stereotype.Component;
 
+import java.util.Collections;
 import java.util.List;
 
 @Component
@@ -21,6 +22,10 @@ public class UserFallbackService implements UserService {
         return new CommonResult<>(defaultUser);
     }
 
+    @Override
+    public CommonResult<List<User>> getUserByIds(List<Long> ids) {
+        return new CommonResult<>(Collections.emptyList(), "调用失败，服务被降级", 500);
+    }
 
     @Override
     public CommonResult<User> getUserByName(String name) {
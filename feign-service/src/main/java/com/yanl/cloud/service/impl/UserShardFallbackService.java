@@ -0,0 +1,32 @@
+package com.yanl.cloud.service.impl;
+
+import com.yanl.cloud.domain.CommonResult;
+import com.yanl.cloud.domain.User;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+
+/**
+ * 分片直连失败时的降级结果，由FallbackUserShardClient调用
+ */
+@Component
+public class UserShardFallbackService {
+
+    public CommonResult create(URI shard, User user) {
+        User defaultUser = new User(-1L, "defaultUser", "123456");
+        return new CommonResult<>(defaultUser);
+    }
+
+    public CommonResult<User> getUser(URI shard, Long id) {
+        User defaultUser = new User(-1L, "defaultUser", "123456");
+        return new CommonResult<>(defaultUser);
+    }
+
+    public CommonResult update(URI shard, User user) {
+        return new CommonResult("调用失败，服务被降级", 500);
+    }
+
+    public CommonResult delete(URI shard, Long id) {
+        return new CommonResult("调用失败，服务被降级", 500);
+    }
+}
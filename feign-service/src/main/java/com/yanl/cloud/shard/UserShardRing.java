@@ -0,0 +1,88 @@
+package com.yanl.cloud.shard;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * user-service实例组成的一致性哈希环，不可变，实例变化时整体替换
+ * 每个实例在环上放置virtualNodes个虚拟节点，id按哈希值顺时针找到的第一个虚拟节点所属的实例为其所在分片，
+ * 增减一个实例时只有约1/N的id需要迁移
+ * 与user-service中的UserShardRing相同，用于直接访问id所在的分片，哈希算法和虚拟节点数必须保持一致，
+ * UserShardRingTest使用user-service中的同一份测试向量
+ */
+public class UserShardRing {
+
+    private final Set<String> nodes;
+
+    private final long[] points;
+
+    private final String[] owners;
+
+    public UserShardRing(Collection<String> nodes, int virtualNodes) {
+        this.nodes = Collections.unmodifiableSet(new TreeSet<>(nodes));
+        List<long[]> entries = new ArrayList<>(this.nodes.size() * virtualNodes);
+        List<String> names = new ArrayList<>(this.nodes);
+        for (int n = 0; n < names.size(); n++) {
+            for (int i = 0; i < virtualNodes; i++) {
+                entries.add(new long[]{hash(names.get(n) + "#" + i), n});
+            }
+        }
+        // 哈希值相同时按实例id排序，保证各处构建出的环完全一致
+        entries.sort((a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+        this.points = new long[entries.size()];
+        this.owners = new String[entries.size()];
+        for (int i = 0; i < entries.size(); i++) {
+            points[i] = entries.get(i)[0];
+            owners[i] = names.get((int) entries.get(i)[1]);
+        }
+    }
+
+    /**
+     * @return id所在分片的实例id，环为空时返回null
+     */
+    public String owner(long id) {
+        if (points.length == 0) {
+            return null;
+        }
+        int index = Arrays.binarySearch(points, hash(id));
+        if (index < 0) {
+            index = -index - 1;
+        } else {
+            // 找到第一个相同的哈希值
+            while (index > 0 && points[index - 1] == points[index]) {
+                index--;
+            }
+        }
+        return owners[index == points.length ? 0 : index];
+    }
+
+    public Set<String> getNodes() {
+        return nodes;
+    }
+
+    private static long hash(String key) {
+        // FNV-1a
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        return hash(h);
+    }
+
+    private static long hash(long key) {
+        // MurmurHash3的fmix64，连续的id也能均匀分布
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+}
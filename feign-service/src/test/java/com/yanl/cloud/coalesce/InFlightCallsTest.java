@@ -0,0 +1,67 @@
+package com.yanl.cloud.coalesce;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class InFlightCallsTest {
+
+    private final List<CompletableFuture<Object>> calls = new ArrayList<>();
+
+    private final InFlightCalls inFlight = new InFlightCalls(args -> {
+        CompletableFuture<Object> call = new CompletableFuture<>();
+        calls.add(call);
+        return call;
+    });
+
+    @Test
+    void sameArgumentsShareOneCall() {
+        CompletableFuture<Object> first = inFlight.submit(new Object[]{1L});
+        CompletableFuture<Object> second = inFlight.submit(new Object[]{1L});
+        CompletableFuture<Object> other = inFlight.submit(new Object[]{2L});
+        assertThat(calls).hasSize(2);
+        calls.get(0).complete("user1");
+        calls.get(1).complete("user2");
+        assertThat(first.join()).isEqualTo("user1");
+        assertThat(second.join()).isEqualTo("user1");
+        assertThat(other.join()).isEqualTo("user2");
+    }
+
+    @Test
+    void callIsRemovedBeforeResultIsPublished() {
+        CompletableFuture<Object> first = inFlight.submit(new Object[]{1L});
+        List<CompletableFuture<Object>> next = new ArrayList<>();
+        // 调用方收到结果时立刻再次调用，应发送新的请求而不是读到已结束的调用
+        first.thenRun(() -> next.add(inFlight.submit(new Object[]{1L})));
+        calls.get(0).complete("old");
+        assertThat(calls).hasSize(2);
+        assertThat(next.get(0)).isNotDone();
+        calls.get(1).complete("new");
+        assertThat(next.get(0).join()).isEqualTo("new");
+    }
+
+    @Test
+    void cancellingOneCallerDoesNotAffectOthers() {
+        CompletableFuture<Object> first = inFlight.submit(new Object[]{1L});
+        CompletableFuture<Object> second = inFlight.submit(new Object[]{1L});
+        first.cancel(false);
+        calls.get(0).complete("user1");
+        assertThat(second.join()).isEqualTo("user1");
+    }
+
+    @Test
+    void failureIsSharedAndNotCached() {
+        CompletableFuture<Object> first = inFlight.submit(new Object[]{1L});
+        CompletableFuture<Object> second = inFlight.submit(new Object[]{1L});
+        calls.get(0).completeExceptionally(new IllegalStateException("boom"));
+        assertThatThrownBy(first::join).hasCauseInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(second::join).hasCauseInstanceOf(IllegalStateException.class);
+        inFlight.submit(new Object[]{1L});
+        assertThat(calls).hasSize(2);
+    }
+}
@@ -0,0 +1,114 @@
+package com.yanl.cloud.coalesce;
+
+import com.yanl.cloud.domain.CommonResult;
+import com.yanl.cloud.domain.User;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class MicroBatcherTest {
+
+    private final List<List<Object>> batches = new ArrayList<>();
+
+    private final List<CompletableFuture<Object>> results = new ArrayList<>();
+
+    /**
+     * 计时任务不自动执行，由测试按需运行，模拟计时结束与达到maxSize的先后顺序
+     */
+    private final List<Runnable> timers = new ArrayList<>();
+
+    private final ScheduledExecutorService scheduler = mock(ScheduledExecutorService.class);
+
+    MicroBatcherTest() {
+        when(scheduler.schedule(any(Runnable.class), anyLong(), any(TimeUnit.class))).thenAnswer(invocation -> {
+            timers.add(invocation.getArgument(0));
+            return null;
+        });
+    }
+
+    @Test
+    void routesResultsByKeyAndReturnsNullDataForMissingKeys() throws Exception {
+        MicroBatcher batcher = batcher(10);
+        CompletableFuture<Object> first = batcher.submit(1L);
+        CompletableFuture<Object> second = batcher.submit(2L);
+        CompletableFuture<Object> missing = batcher.submit(3L);
+        CompletableFuture<Object> duplicate = batcher.submit(1L);
+        timers.get(0).run();
+        assertThat(batches).containsExactly(Arrays.asList(1L, 2L, 3L));
+        // 结果的顺序与参数不同，按id分配
+        results.get(0).complete(new CommonResult<>(Arrays.asList(user(2L), user(1L))));
+        assertThat(username(first)).isEqualTo("user1");
+        assertThat(username(second)).isEqualTo("user2");
+        assertThat(username(duplicate)).isEqualTo("user1");
+        assertThat(missing.join()).isInstanceOfSatisfying(CommonResult.class, result -> {
+            assertThat(result.getCode()).isEqualTo(200);
+            assertThat(result.getData()).isNull();
+        });
+    }
+
+    @Test
+    void failedBatchFailsEveryCaller() {
+        MicroBatcher batcher = batcher(10);
+        CompletableFuture<Object> first = batcher.submit(1L);
+        CompletableFuture<Object> second = batcher.submit(2L);
+        timers.get(0).run();
+        results.get(0).complete(new CommonResult<>("调用失败，服务被降级", 500));
+        assertThatThrownBy(first::join).hasCauseInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(second::join).hasCauseInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void timerOfBatchAlreadySentAtMaxSizeDoesNotFlushNextBatch() throws Exception {
+        MicroBatcher batcher = batcher(2);
+        CompletableFuture<Object> first = batcher.submit(1L);
+        CompletableFuture<Object> second = batcher.submit(2L);
+        // 达到maxSize立即发送，第一个计时任务还未执行
+        assertThat(batches).containsExactly(Arrays.asList(1L, 2L));
+        CompletableFuture<Object> third = batcher.submit(3L);
+        assertThat(timers).hasSize(2);
+        timers.get(0).run();
+        // 旧的计时任务不会提前发送新一批
+        assertThat(batches).hasSize(1);
+        timers.get(1).run();
+        assertThat(batches).containsExactly(Arrays.asList(1L, 2L), Arrays.asList(3L));
+        results.get(0).complete(new CommonResult<>(Arrays.asList(user(1L), user(2L))));
+        results.get(1).complete(new CommonResult<>(Arrays.asList(user(3L))));
+        assertThat(username(first)).isEqualTo("user1");
+        assertThat(username(second)).isEqualTo("user2");
+        assertThat(username(third)).isEqualTo("user3");
+    }
+
+    private MicroBatcher batcher(int maxSize) {
+        Batched batched = mock(Batched.class);
+        when(batched.keyProperty()).thenReturn("id");
+        when(batched.maxSize()).thenReturn(maxSize);
+        when(batched.windowMillis()).thenReturn(2L);
+        return new MicroBatcher(keys -> {
+            CompletableFuture<Object> result = new CompletableFuture<>();
+            batches.add(keys);
+            results.add(result);
+            return result;
+        }, batched, scheduler);
+    }
+
+    private static User user(Long id) {
+        return new User(id, "user" + id, "123456");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String username(CompletableFuture<Object> future) throws Exception {
+        return ((CommonResult<User>) future.get(1, TimeUnit.SECONDS)).getData().getUsername();
+    }
+}
@@ -0,0 +1,95 @@
+package com.yanl.cloud.coalesce;
+
+import com.yanl.cloud.domain.CommonResult;
+import com.yanl.cloud.domain.User;
+import com.yanl.cloud.service.UserAsyncService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.bind.annotation.PostMapping;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RequestCoalescerTest {
+
+    private final RequestCoalescer coalescer = new RequestCoalescer(true, true);
+
+    @AfterEach
+    void close() {
+        coalescer.close();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void mergesDuplicatesThenBatchesByKey() throws Exception {
+        UserAsyncService target = mock(UserAsyncService.class);
+        List<List<Long>> batches = new ArrayList<>();
+        List<CompletableFuture<CommonResult<List<User>>>> results = new ArrayList<>();
+        when(target.getUserByIds(anyList())).thenAnswer(invocation -> {
+            CompletableFuture<CommonResult<List<User>>> result = new CompletableFuture<>();
+            synchronized (results) {
+                batches.add(invocation.getArgument(0));
+                results.add(result);
+            }
+            return result;
+        });
+        UserAsyncService client = coalescer.wrap(UserAsyncService.class, target);
+        CompletableFuture<CommonResult<User>> first = client.getUser(1L);
+        CompletableFuture<CommonResult<User>> second = client.getUser(2L);
+        CompletableFuture<CommonResult<User>> duplicate = client.getUser(1L);
+        CompletableFuture<CommonResult<User>> missing = client.getUser(3L);
+        // 批量调用返回前，相同id的调用由single-flight合并，不论是否在同一个窗口内
+        long deadline = System.currentTimeMillis() + 1000;
+        while (batches.stream().mapToInt(List::size).sum() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        synchronized (results) {
+            assertThat(batches.stream().flatMap(List::stream).collect(Collectors.toList())).containsExactlyInAnyOrder(1L, 2L, 3L);
+            for (int i = 0; i < results.size(); i++) {
+                List<User> users = batches.get(i).stream().filter(id -> id != 3L)
+                        .map(id -> new User(id, "user" + id, "123456")).collect(Collectors.toList());
+                results.get(i).complete(new CommonResult<>(users));
+            }
+        }
+        assertThat(first.get(1, TimeUnit.SECONDS).getData().getUsername()).isEqualTo("user1");
+        assertThat(second.get(1, TimeUnit.SECONDS).getData().getUsername()).isEqualTo("user2");
+        assertThat(duplicate.get(1, TimeUnit.SECONDS).getData().getUsername()).isEqualTo("user1");
+        assertThat(missing.get(1, TimeUnit.SECONDS).getCode()).isEqualTo(200);
+        assertThat(missing.get(1, TimeUnit.SECONDS).getData()).isNull();
+        verify(target, never()).getUser(anyLong());
+    }
+
+    @Test
+    void methodsWithoutAnnotationsCallTarget() {
+        UserAsyncService target = mock(UserAsyncService.class);
+        CompletableFuture<CommonResult> created = CompletableFuture.completedFuture(new CommonResult<>("操作成功", 200));
+        when(target.create(any())).thenReturn(created);
+        UserAsyncService client = coalescer.wrap(UserAsyncService.class, target);
+        assertThat(client.create(new User(1L, "ly", "5211"))).isSameAs(created);
+    }
+
+    @Test
+    void rejectsAnnotatedNonGetMethods() {
+        assertThatThrownBy(() -> coalescer.wrap(PostClient.class, mock(PostClient.class)))
+                .isInstanceOf(IllegalStateException.class).hasMessageContaining("GET");
+    }
+
+    interface PostClient {
+        @SingleFlight
+        @PostMapping("/user/update")
+        CompletableFuture<CommonResult> update(User user);
+    }
+}
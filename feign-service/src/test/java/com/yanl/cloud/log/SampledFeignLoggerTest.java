@@ -0,0 +1,106 @@
+package com.yanl.cloud.log;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import feign.Logger;
+import feign.Request;
+import feign.Response;
+import feign.Util;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SampledFeignLoggerTest {
+
+    private final ListAppender<ILoggingEvent> appender = new ListAppender<>();
+
+    private final ch.qos.logback.classic.Logger target =
+            (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(SampledFeignLogger.class);
+
+    private SampledFeignLogger logger;
+
+    @BeforeEach
+    void attach() {
+        appender.start();
+        target.addAppender(appender);
+    }
+
+    @AfterEach
+    void detach() {
+        logger.close();
+        target.detachAppender(appender);
+    }
+
+    @Test
+    void fullLevelWritesTextBodiesAsIsAndBinaryBodiesAsHex() throws Exception {
+        logger = new SampledFeignLogger(Logger.Level.FULL, "", 1, 512, 16);
+        Response json = logger.logResponse("UserService#getUser(Long)",
+                response(200, "application/json", "{\"code\":200}".getBytes(StandardCharsets.UTF_8)), 3);
+        // 读取过的响应体重新放回，解码时仍可读取
+        assertThat(Util.toString(json.body().asReader(StandardCharsets.UTF_8))).isEqualTo("{\"code\":200}");
+        logger.logResponse("UserService#getUser(Long)",
+                response(200, "application/x-jackson-smile", new byte[]{':', ')', '\n', 0x05, (byte) 0xfa}), 3);
+        List<String> lines = awaitLines(2);
+        assertThat(lines.get(0)).contains("responseBody=\"{\"code\":200}\"");
+        assertThat(lines.get(1)).contains("responseBody=hex:3a290a05fa").doesNotContain("\n");
+    }
+
+    @Test
+    void truncatesBodiesToMaxBytes() throws Exception {
+        logger = new SampledFeignLogger(Logger.Level.FULL, "", 1, 4, 16);
+        logger.logResponse("UserService#getUser(Long)",
+                response(200, "application/x-jackson-smile", new byte[]{1, 2, 3, 4, 5, 6}), 3);
+        assertThat(awaitLines(1).get(0)).endsWith("responseBody=hex:01020304");
+    }
+
+    @Test
+    void samplesSuccessfulCallsButAlwaysLogsFailures() throws Exception {
+        logger = new SampledFeignLogger(Logger.Level.BASIC, "", 0, 512, 16);
+        logger.logResponse("UserService#getUser(Long)", response(200, "application/json", new byte[0]), 3);
+        logger.logResponse("UserService#getUser(Long)", response(500, "application/json", new byte[0]), 3);
+        List<String> lines = awaitLines(1);
+        assertThat(lines).hasSize(1);
+        assertThat(lines.get(0)).contains("status=500").doesNotContain("responseBody");
+    }
+
+    @Test
+    void longestMethodPrefixWins() throws Exception {
+        logger = new SampledFeignLogger(Logger.Level.BASIC, "UserService=NONE,UserService#getUser=HEADERS", 1, 512, 16);
+        logger.logResponse("UserService#create(User)", response(500, "application/json", new byte[0]), 3);
+        logger.logResponse("UserService#getUser(Long)", response(200, "application/json", new byte[0]), 3);
+        List<String> lines = awaitLines(1);
+        assertThat(lines).hasSize(1);
+        assertThat(lines.get(0)).contains("method=UserService#getUser(Long)").contains("responseHeaders=");
+    }
+
+    private static Response response(int status, String contentType, byte[] body) {
+        Map<String, Collection<String>> headers = Collections.singletonMap("Content-Type", Collections.singletonList(contentType));
+        Request request = Request.create(Request.HttpMethod.GET, "http://user-service/user/1", Collections.emptyMap(),
+                null, StandardCharsets.UTF_8, null);
+        return Response.builder().status(status).reason("reason").headers(headers).body(body).request(request).build();
+    }
+
+    /**
+     * 日志在写线程中输出，等待到至少count条后再稍等片刻，确认没有多余的日志
+     */
+    private List<String> awaitLines(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (appender.list.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(50);
+        synchronized (appender.list) {
+            return appender.list.stream().map(ILoggingEvent::getFormattedMessage).collect(Collectors.toList());
+        }
+    }
+}
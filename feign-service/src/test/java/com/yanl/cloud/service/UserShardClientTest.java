@@ -0,0 +1,102 @@
+package com.yanl.cloud.service;
+
+import com.fasterxml.jackson.module.paramnames.ParameterNamesModule;
+import com.sun.net.httpserver.HttpServer;
+import com.yanl.cloud.async.WebClientTransport;
+import com.yanl.cloud.config.FeignAsyncConfig;
+import com.yanl.cloud.domain.CommonResult;
+import com.yanl.cloud.domain.User;
+import com.yanl.cloud.log.SampledFeignLogger;
+import com.yanl.cloud.service.impl.UserShardFallbackService;
+import feign.Logger;
+import feign.RequestInterceptor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.boot.autoconfigure.http.HttpMessageConverters;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UserShardClientTest {
+
+    private final List<HttpServer> servers = new ArrayList<>();
+
+    private final SampledFeignLogger logger = new SampledFeignLogger(Logger.Level.NONE, "", 0, 0, 16);
+
+    private final WebClientTransport transport = new WebClientTransport(new MockEnvironment(), "user-shard-service");
+
+    private final UserShardClient client = new FeignAsyncConfig().userShardClient(transport,
+            () -> new HttpMessageConverters(new MappingJackson2HttpMessageConverter(Jackson2ObjectMapperBuilder.json()
+                    .modulesToInstall(new ParameterNamesModule()).build())),
+            new StaticListableBeanFactory().getBeanProvider(RequestInterceptor.class),
+            new UserShardFallbackService(), logger, 1000);
+
+    @AfterEach
+    void stop() {
+        servers.forEach(server -> server.stop(0));
+        logger.close();
+        transport.close();
+    }
+
+    @Test
+    void callsTheGivenShardWithoutBlockingTheCaller() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        URI first = stub(200, "shard-a", release);
+        URI second = stub(200, "shard-b", release);
+        CompletableFuture<CommonResult<User>> fromFirst = client.getUser(first, 1L);
+        CompletableFuture<CommonResult<User>> fromSecond = client.getUser(second, 2L);
+        // 分片未响应时调用已经返回
+        assertThat(fromFirst).isNotDone();
+        release.countDown();
+        assertThat(fromFirst.get(1, TimeUnit.SECONDS).getData().getUsername()).isEqualTo("shard-a");
+        assertThat(fromSecond.get(1, TimeUnit.SECONDS).getData().getUsername()).isEqualTo("shard-b");
+    }
+
+    @Test
+    void fallsBackWhenTheShardFails() throws Exception {
+        CountDownLatch release = new CountDownLatch(0);
+        URI shard = stub(500, "shard-a", release);
+        assertThat(client.getUser(shard, 1L).get(1, TimeUnit.SECONDS).getData().getUsername()).isEqualTo("defaultUser");
+        assertThat(client.delete(shard, 1L).get(1, TimeUnit.SECONDS).getCode()).isEqualTo(500);
+    }
+
+    /**
+     * 本地的分片实例桩，release之后按指定状态码返回用户
+     */
+    private URI stub(int status, String username, CountDownLatch release) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/user", exchange -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body = ("{\"data\":{\"id\":1,\"username\":\"" + username + "\",\"password\":\"p\"},"
+                    + "\"msg\":\"操作成功\",\"code\":200}").getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        servers.add(server);
+        return URI.create("http://127.0.0.1:" + server.getAddress().getPort());
+    }
+}
@@ -0,0 +1,91 @@
+package com.yanl.cloud.benchmark;
+
+import cn.hutool.core.bean.BeanUtil;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yanl.cloud.domain.CommonResult;
+import com.yanl.cloud.domain.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 比较user-service响应的两种解码方式：
+ * mapToBean为原来的方式，按原始类型CommonResult读取，data为LinkedHashMap，再通过hutool BeanUtil反射转换为User；
+ * typed为现在的方式，按CommonResult<User>的类型直接从JSON读取为User
+ * mvn -Pbenchmark test-compile exec:exec -Dbenchmark.args="Decode -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecodeBenchmark {
+
+    private static final TypeReference<CommonResult<User>> USER_TYPE = new TypeReference<CommonResult<User>>() {
+    };
+
+    private static final TypeReference<CommonResult<List<User>>> USER_LIST_TYPE = new TypeReference<CommonResult<List<User>>>() {
+    };
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private byte[] single;
+
+    private byte[] list;
+
+    @Setup
+    public void setup() throws IOException {
+        single = objectMapper.writeValueAsBytes(new CommonResult<>(new User(1L, "macro", "123456", 3L)));
+        List<User> users = new ArrayList<>();
+        for (long id = 1; id <= 50; id++) {
+            users.add(new User(id, "user" + id, "123456", id));
+        }
+        list = objectMapper.writeValueAsBytes(new CommonResult<>(users));
+        if (!new String(single, StandardCharsets.UTF_8).contains("\"username\":\"macro\"")) {
+            throw new IllegalStateException("unexpected payload");
+        }
+    }
+
+    @Benchmark
+    public User singleMapToBean() throws IOException {
+        CommonResult<?> result = objectMapper.readValue(single, CommonResult.class);
+        return BeanUtil.mapToBean((Map<?, ?>) result.getData(), User.class, true);
+    }
+
+    @Benchmark
+    public User singleTyped() throws IOException {
+        return objectMapper.readValue(single, USER_TYPE).getData();
+    }
+
+    @Benchmark
+    public List<User> listMapToBean() throws IOException {
+        CommonResult<?> result = objectMapper.readValue(list, CommonResult.class);
+        List<?> data = (List<?>) result.getData();
+        List<User> users = new ArrayList<>(data.size());
+        for (Object item : data) {
+            users.add(BeanUtil.mapToBean((Map<?, ?>) item, User.class, true));
+        }
+        return users;
+    }
+
+    @Benchmark
+    public List<User> listTyped() throws IOException {
+        return objectMapper.readValue(list, USER_LIST_TYPE).getData();
+    }
+}
@@ -0,0 +1,88 @@
+package com.yanl.cloud.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 固定并发数的HTTP压测，用于比较阻塞和响应式接口（UserHystrixController、UserReactiveController）在相同Tomcat线程数下的吞吐
+ * 先启动user-service和hystrix-service（例如 --server.tomcat.threads.max=20 --user.bulkhead.max-concurrent=1000，
+ * 否则同一调用方的并发超过隔离舱上限后会直接返回429），再分别压测两个接口：
+ * mvn -Pbenchmark test-compile exec:exec -Dbenchmark.main=com.yanl.cloud.benchmark.HttpLoad \
+ *     -Dbenchmark.args="http://localhost:8006/user/testCollapse 100 10"
+ * mvn -Pbenchmark test-compile exec:exec -Dbenchmark.main=com.yanl.cloud.benchmark.HttpLoad \
+ *     -Dbenchmark.args="http://localhost:8006/user/reactive/testCollapse 100 10"
+ * 参数：url（其中的{id}替换为1~3的随机值） 并发数 秒数 [X-Caller-Id]
+ * 响应体中的code为200时计为成功，为429时计为拒绝，其他计为失败
+ */
+public class HttpLoad {
+
+    public static void main(String[] args) throws InterruptedException {
+        String url = args[0];
+        int clients = Integer.parseInt(args[1]);
+        int seconds = Integer.parseInt(args[2]);
+        String caller = args.length > 3 ? args[3] : null;
+        AtomicLong ok = new AtomicLong();
+        AtomicLong rejected = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+        ConcurrentLinkedQueue<Long> latencies = new ConcurrentLinkedQueue<>();
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        Thread[] threads = new Thread[clients];
+        for (int i = 0; i < clients; i++) {
+            threads[i] = new Thread(() -> {
+                byte[] buffer = new byte[8192];
+                ByteArrayOutputStream body = new ByteArrayOutputStream();
+                while (System.nanoTime() < end) {
+                    long start = System.nanoTime();
+                    try {
+                        String target = url.replace("{id}", String.valueOf(1 + ThreadLocalRandom.current().nextInt(3)));
+                        HttpURLConnection connection = (HttpURLConnection) new URL(target).openConnection();
+                        connection.setRequestProperty("Accept", "application/json");
+                        if (caller != null) {
+                            connection.setRequestProperty("X-Caller-Id", caller);
+                        }
+                        connection.setReadTimeout(30000);
+                        int status = connection.getResponseCode();
+                        body.reset();
+                        try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+                            int read;
+                            while (in != null && (read = in.read(buffer)) > 0) {
+                                body.write(buffer, 0, read);
+                            }
+                        }
+                        String content = body.toString("UTF-8");
+                        if (content.contains("\"code\":429")) {
+                            rejected.incrementAndGet();
+                        } else if (status == 200 && content.contains("\"code\":200")) {
+                            ok.incrementAndGet();
+                        } else {
+                            failed.incrementAndGet();
+                        }
+                    } catch (IOException e) {
+                        failed.incrementAndGet();
+                    }
+                    latencies.add(System.nanoTime() - start);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long[] sorted = latencies.stream().mapToLong(Long::longValue).toArray();
+        Arrays.sort(sorted);
+        System.out.printf("%s clients=%d ok=%d rejected=%d failed=%d rps=%.1f p50=%dms p99=%dms%n", url, clients,
+                ok.get(), rejected.get(), failed.get(), ok.get() / (double) seconds, millis(sorted, 0.5), millis(sorted, 0.99));
+    }
+
+    private static long millis(long[] sorted, double percentile) {
+        return sorted.length == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(sorted[(int) (sorted.length * percentile)]);
+    }
+}
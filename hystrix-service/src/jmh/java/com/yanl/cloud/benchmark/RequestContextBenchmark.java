@@ -0,0 +1,52 @@
+package com.yanl.cloud.benchmark;
+
+import com.netflix.hystrix.strategy.concurrency.HystrixRequestContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 比较不需要请求缓存的请求上，每次初始化HystrixRequestContext（原过滤器）与按需初始化（HystrixRequestContextFilter + Aspect）的开销
+ * 每个请求分配的字节数看gc.alloc.rate.norm：
+ * mvn -Pbenchmark test-compile exec:exec -Dbenchmark.args="RequestContext -prof gc"
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestContextBenchmark {
+
+    /**
+     * 原过滤器：请求开始时初始化，结束时关闭
+     */
+    @Benchmark
+    public boolean eager() {
+        HystrixRequestContext context = HystrixRequestContext.initializeContext();
+        try {
+            return HystrixRequestContext.isCurrentThreadInitialized();
+        } finally {
+            context.close();
+            HystrixRequestContext.setContextOnCurrentThread(null);
+        }
+    }
+
+    /**
+     * 按需初始化：没有调用需要请求上下文的方法，过滤器在请求结束时只做一次检查
+     */
+    @Benchmark
+    public boolean lazy() {
+        if (HystrixRequestContext.isCurrentThreadInitialized()) {
+            HystrixRequestContext.getContextForCurrentThread().close();
+            HystrixRequestContext.setContextOnCurrentThread(null);
+            return true;
+        }
+        return false;
+    }
+}
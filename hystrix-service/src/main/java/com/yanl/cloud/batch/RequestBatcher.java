@@ -0,0 +1,210 @@
+package com.yanl.cloud.batch;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * 请求合并器，把短时间内按key的单个查询合并成一次批量查询，代替固定延迟的@HystrixCollapser
+ * 满足以下任一条件时发出一批：
+ * 1. 排队数量达到maxBatchSize
+ * 2. 最早的请求已等待maxDelay
+ * 3. 按最近的请求间隔（指数加权平均）估计短时间内不会有新请求：请求间隔不小于maxDelay时立即发出，
+ *    否则在距上一个请求两倍平均间隔后发出
+ * 因此流量低时几乎没有额外延迟，流量高时自动攒成大批次
+ * 批量查询结果按key分发给各个请求，相同key的请求只查询一次，查不到的key返回null
+ * 批量查询在固定大小的线程池中执行，排队的批次超过上限时该批请求直接失败；close时尚未发出的请求同样失败
+ * 通过Micrometer记录批次大小（{name}.size）和排队时间（{name}.queue.wait）的分布
+ */
+@Slf4j
+public class RequestBatcher<K, V> {
+
+    private final Function<List<K>, Map<K, V>> loader;
+
+    private final int maxBatchSize;
+
+    private final long maxDelayNanos;
+
+    private final ArrayDeque<Pending<K, V>> queue = new ArrayDeque<>();
+
+    private final ExecutorService loadExecutor;
+
+    private final Thread dispatcher;
+
+    private final DistributionSummary batchSize;
+
+    private final Timer queueWait;
+
+    /**
+     * 请求间隔的指数加权平均，单位纳秒，为0表示还没有足够的数据
+     */
+    private double arrivalInterval;
+
+    private long lastArrival;
+
+    private volatile boolean running = true;
+
+    /**
+     * @param maxConcurrentLoads 同时执行的批量查询数，另外最多有同样数量的批次排队
+     */
+    public RequestBatcher(String name, Function<List<K>, Map<K, V>> loader, int maxBatchSize, long maxDelayMillis,
+                          int maxConcurrentLoads, MeterRegistry meterRegistry) {
+        this.loader = loader;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.batchSize = DistributionSummary.builder(name + ".size")
+                .description("每批合并的请求数")
+                .publishPercentileHistogram()
+                .minimumExpectedValue(1.0)
+                .maximumExpectedValue((double) maxBatchSize)
+                .register(meterRegistry);
+        this.queueWait = Timer.builder(name + ".queue.wait")
+                .description("请求从提交到所在批次发出的等待时间")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(maxConcurrentLoads, maxConcurrentLoads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(maxConcurrentLoads), r -> {
+            Thread thread = new Thread(r, name + "-load-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        this.loadExecutor = executor;
+        this.dispatcher = new Thread(this::dispatch, name + "-dispatcher");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    }
+
+    public CompletableFuture<V> submit(K key) {
+        Pending<K, V> pending = new Pending<>(key, System.nanoTime());
+        synchronized (queue) {
+            if (!running) {
+                pending.future.completeExceptionally(new IllegalStateException("request batcher is closed"));
+                return pending.future;
+            }
+            if (lastArrival != 0) {
+                // 长时间空闲后的间隔按maxDelay计算，避免之后需要很多请求才能降下来
+                long interval = Math.min(pending.enqueueTime - lastArrival, maxDelayNanos);
+                arrivalInterval = arrivalInterval == 0 ? interval : arrivalInterval * 0.8 + interval * 0.2;
+            }
+            lastArrival = pending.enqueueTime;
+            queue.add(pending);
+            queue.notify();
+        }
+        return pending.future;
+    }
+
+    /**
+     * 停止合并，尚未发出的请求以异常结束，已发出的批量查询继续执行完
+     */
+    public void close() {
+        List<Pending<K, V>> remaining;
+        synchronized (queue) {
+            running = false;
+            remaining = new ArrayList<>(queue);
+            queue.clear();
+        }
+        dispatcher.interrupt();
+        loadExecutor.shutdown();
+        IllegalStateException closed = new IllegalStateException("request batcher is closed");
+        for (Pending<K, V> pending : remaining) {
+            pending.future.completeExceptionally(closed);
+        }
+    }
+
+    private void dispatch() {
+        while (running) {
+            List<Pending<K, V>> batch;
+            try {
+                synchronized (queue) {
+                    if (queue.isEmpty()) {
+                        queue.wait();
+                        continue;
+                    }
+                    long remaining = flushTime() - System.nanoTime();
+                    if (queue.size() < maxBatchSize && remaining > 0) {
+                        TimeUnit.NANOSECONDS.timedWait(queue, remaining);
+                        continue;
+                    }
+                    batch = new ArrayList<>(Math.min(queue.size(), maxBatchSize));
+                    while (!queue.isEmpty() && batch.size() < maxBatchSize) {
+                        batch.add(queue.poll());
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            long now = System.nanoTime();
+            batchSize.record(batch.size());
+            for (Pending<K, V> pending : batch) {
+                queueWait.record(now - pending.enqueueTime, TimeUnit.NANOSECONDS);
+            }
+            try {
+                loadExecutor.execute(() -> load(batch));
+            } catch (RejectedExecutionException e) {
+                log.warn("批量查询排队已满，拒绝数量：{}", batch.size());
+                for (Pending<K, V> pending : batch) {
+                    pending.future.completeExceptionally(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 调用时持有queue的锁，且queue不为空
+     */
+    private long flushTime() {
+        long oldest = queue.peek().enqueueTime;
+        if (arrivalInterval == 0 || arrivalInterval >= maxDelayNanos) {
+            return oldest;
+        }
+        return Math.min(oldest + maxDelayNanos, lastArrival + (long) (arrivalInterval * 2));
+    }
+
+    private void load(List<Pending<K, V>> batch) {
+        Set<K> keys = new LinkedHashSet<>();
+        for (Pending<K, V> pending : batch) {
+            keys.add(pending.key);
+        }
+        try {
+            Map<K, V> values = loader.apply(new ArrayList<>(keys));
+            for (Pending<K, V> pending : batch) {
+                pending.future.complete(values.get(pending.key));
+            }
+        } catch (Throwable e) {
+            log.warn("批量查询失败，数量：{}，{}", keys.size(), e.toString());
+            for (Pending<K, V> pending : batch) {
+                pending.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    private static class Pending<K, V> {
+        private final K key;
+        private final long enqueueTime;
+        private final CompletableFuture<V> future = new CompletableFuture<>();
+
+        Pending(K key, long enqueueTime) {
+            this.key = key;
+            this.enqueueTime = enqueueTime;
+        }
+    }
+}
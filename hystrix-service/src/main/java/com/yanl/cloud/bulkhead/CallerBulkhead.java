@@ -0,0 +1,86 @@
+package com.yanl.cloud.bulkhead;
+
+import rx.Observable;
+import rx.subscriptions.Subscriptions;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 单个调用方的隔离舱：同时执行的请求不超过maxConcurrent，其余按到达顺序排队
+ * 排队时不占用线程，前一个请求结束时由结束的线程发起下一个请求，因此只用于非阻塞的Observable；
+ * 排队数量不在这里限制，由外层Hystrix命令的信号量把执行中和排队的总数限制为maxConcurrent+maxQueue
+ */
+public class CallerBulkhead {
+
+    private final int maxConcurrent;
+
+    private final ArrayDeque<Runnable> waiting = new ArrayDeque<>();
+
+    private int running;
+
+    public CallerBulkhead(int maxConcurrent) {
+        this.maxConcurrent = maxConcurrent;
+    }
+
+    public <T> Observable<T> run(Observable<T> call) {
+        return Observable.unsafeCreate(subscriber -> {
+            AtomicBoolean released = new AtomicBoolean();
+            Runnable release = () -> {
+                if (released.compareAndSet(false, true)) {
+                    release();
+                }
+            };
+            Runnable start = () -> {
+                if (subscriber.isUnsubscribed()) {
+                    release.run();
+                    return;
+                }
+                call.doAfterTerminate(release::run)
+                        .doOnUnsubscribe(release::run)
+                        .unsafeSubscribe(subscriber);
+            };
+            // 排队期间取消订阅（如客户端断开）时移出队列，此时还没有占用名额
+            subscriber.add(Subscriptions.create(() -> {
+                synchronized (this) {
+                    waiting.remove(start);
+                }
+            }));
+            if (acquire(start)) {
+                start.run();
+            }
+        });
+    }
+
+    public synchronized int getRunning() {
+        return running;
+    }
+
+    public synchronized int getWaiting() {
+        return waiting.size();
+    }
+
+    private synchronized boolean acquire(Runnable start) {
+        if (running < maxConcurrent) {
+            running++;
+            return true;
+        }
+        waiting.add(start);
+        return false;
+    }
+
+    /**
+     * 有排队的请求时名额直接转给队首的请求
+     */
+    private void release() {
+        Runnable next;
+        synchronized (this) {
+            next = waiting.poll();
+            if (next == null) {
+                running--;
+                return;
+            }
+        }
+        next.run();
+    }
+}
@@ -0,0 +1,139 @@
+package com.yanl.cloud.bulkhead;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.netflix.hystrix.HystrixCommandGroupKey;
+import com.netflix.hystrix.HystrixCommandKey;
+import com.netflix.hystrix.HystrixCommandProperties;
+import com.netflix.hystrix.HystrixObservableCommand;
+import com.yanl.cloud.domain.CommonResult;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Mono;
+import rx.Observable;
+import rx.RxReactiveStreams;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按调用方划分的隔离舱，避免单个调用方占满所有并发，影响其他调用方
+ * 调用方由请求头user.bulkhead.caller-header标识，没有时使用Zuul转发时添加的X-Forwarded-Prefix（即路由），都没有时为anonymous
+ * 每个调用方的请求在各自的Hystrix命令bulkhead-{调用方}（分组CallerBulkhead）中执行，信号量隔离：
+ * 1. CallerBulkhead限制同时执行的数量，其余排队
+ * 2. 信号量大小为max-concurrent+max-queue，执行中和排队的总数达到该值时被Hystrix拒绝，返回429
+ * 因此/actuator/hystrix.stream中每个调用方单独显示，并发数包含排队中的请求，拒绝数即为排队已满的次数
+ * 隔离舱在第一次请求时创建，空闲idle-minutes后回收；单独隔离的调用方超过max-callers时，新的调用方共用other
+ * Hystrix会一直保留每个命令的统计，调用方应为服务名或路由这类有限的集合，不能是用户id
+ */
+@Slf4j
+@Component
+public class CallerBulkheads {
+
+    private static final String ZUUL_ROUTE_HEADER = "X-Forwarded-Prefix";
+
+    private static final String ANONYMOUS = "anonymous";
+
+    private static final String OTHER = "other";
+
+    private static final HystrixCommandGroupKey GROUP_KEY = HystrixCommandGroupKey.Factory.asKey("CallerBulkhead");
+
+    private final Cache<String, CallerBulkhead> bulkheads;
+
+    private final String callerHeader;
+
+    private final int maxConcurrent;
+
+    private final int maxQueue;
+
+    private final long maxCallers;
+
+    public CallerBulkheads(@Value("${user.bulkhead.caller-header:X-Caller-Id}") String callerHeader,
+                           @Value("${user.bulkhead.max-concurrent:20}") int maxConcurrent,
+                           @Value("${user.bulkhead.max-queue:50}") int maxQueue,
+                           @Value("${user.bulkhead.max-callers:100}") long maxCallers,
+                           @Value("${user.bulkhead.idle-minutes:10}") long idle) {
+        this.callerHeader = callerHeader;
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueue = maxQueue;
+        this.maxCallers = maxCallers;
+        this.bulkheads = Caffeine.newBuilder()
+                .expireAfterAccess(idle, TimeUnit.MINUTES)
+                .build();
+    }
+
+    public String caller(HttpServletRequest request) {
+        String caller = request.getHeader(callerHeader);
+        if (!StringUtils.hasText(caller)) {
+            caller = request.getHeader(ZUUL_ROUTE_HEADER);
+        }
+        if (!StringUtils.hasText(caller)) {
+            return ANONYMOUS;
+        }
+        // 调用方会作为Hystrix命令名，只保留常见字符并限制长度
+        caller = caller.trim().replaceAll("[^A-Za-z0-9._/-]", "_");
+        return caller.length() > 64 ? caller.substring(0, 64) : caller;
+    }
+
+    public <T> Observable<CommonResult<T>> execute(String caller, Observable<CommonResult<T>> call) {
+        String key = bulkheads.getIfPresent(caller) != null || bulkheads.estimatedSize() < maxCallers ? caller : OTHER;
+        CallerBulkhead bulkhead = bulkheads.get(key, k -> {
+            log.info("创建调用方隔离舱：{}", k);
+            return new CallerBulkhead(maxConcurrent);
+        });
+        return new BulkheadCommand<>(setter(key), bulkhead, call, key).toObservable();
+    }
+
+    public <T> Mono<CommonResult<T>> execute(String caller, Mono<CommonResult<T>> call) {
+        return Mono.from(RxReactiveStreams.toPublisher(execute(caller, RxReactiveStreams.toObservable(call))));
+    }
+
+    /**
+     * 超时和熔断由被调用的命令负责，这里关闭；降级方法的并发数使用hystrix.command.default中的配置
+     */
+    private HystrixObservableCommand.Setter setter(String caller) {
+        return HystrixObservableCommand.Setter.withGroupKey(GROUP_KEY)
+                .andCommandKey(HystrixCommandKey.Factory.asKey("bulkhead-" + caller))
+                .andCommandPropertiesDefaults(HystrixCommandProperties.Setter()
+                        .withExecutionIsolationStrategy(HystrixCommandProperties.ExecutionIsolationStrategy.SEMAPHORE)
+                        .withExecutionIsolationSemaphoreMaxConcurrentRequests(maxConcurrent + maxQueue)
+                        .withExecutionTimeoutEnabled(false)
+                        .withCircuitBreakerEnabled(false)
+                        .withRequestCacheEnabled(false)
+                        .withRequestLogEnabled(false));
+    }
+
+    private static class BulkheadCommand<T> extends HystrixObservableCommand<CommonResult<T>> {
+
+        private final CallerBulkhead bulkhead;
+
+        private final Observable<CommonResult<T>> call;
+
+        private final String caller;
+
+        BulkheadCommand(Setter setter, CallerBulkhead bulkhead, Observable<CommonResult<T>> call, String caller) {
+            super(setter);
+            this.bulkhead = bulkhead;
+            this.call = call;
+            this.caller = caller;
+        }
+
+        @Override
+        protected Observable<CommonResult<T>> construct() {
+            return bulkhead.run(call);
+        }
+
+        /**
+         * 只处理排队已满被拒绝的情况，被调用命令自身的异常原样抛出
+         */
+        @Override
+        protected Observable<CommonResult<T>> resumeWithFallback() {
+            if (isResponseSemaphoreRejected()) {
+                return Observable.just(new CommonResult<>("调用方" + caller + "的请求过多，请稍后重试", 429));
+            }
+            return Observable.error(getExecutionException());
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.yanl.cloud.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.yanl.cloud.domain.CommonResult;
+import com.yanl.cloud.domain.User;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 最近一次成功查询到的用户，服务降级时返回这里的数据而不是默认用户
+ * 与UserCache不同，这里的数据只在降级时使用，容量大、保存时间长；
+ * 熔断器打开时Hystrix直接执行降级方法，不再发出请求，此时同样从这里返回
+ */
+@Component
+public class LastKnownGoodCache {
+
+    private final Cache<Long, Entry> cache;
+
+    public LastKnownGoodCache(MeterRegistry meterRegistry,
+                              @Value("${user.fallback-cache.max-size:100000}") long maxSize,
+                              @Value("${user.fallback-cache.max-stale-hours:24}") long maxStale) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(maxStale, TimeUnit.HOURS)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "user.fallback.cache");
+    }
+
+    /**
+     * 保存成功的查询结果，未找到用户或失败的结果不保存
+     */
+    public void put(Long id, CommonResult<User> result) {
+        if (id != null && result != null && result.getData() != null && Integer.valueOf(200).equals(result.getCode())) {
+            cache.put(id, new Entry(result.getData(), System.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * @return 带staleMillis标记的缓存数据，没有时返回null
+     */
+    public CommonResult<User> getStale(Long id) {
+        Entry entry = id == null ? null : cache.getIfPresent(id);
+        if (entry == null) {
+            return null;
+        }
+        CommonResult<User> result = new CommonResult<>(entry.data, "服务降级，返回缓存的数据", 200);
+        result.setStaleMillis(System.currentTimeMillis() - entry.time);
+        return result;
+    }
+
+    private static class Entry {
+        private final User data;
+        private final long time;
+
+        Entry(User data, long time) {
+            this.data = data;
+            this.time = time;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.yanl.cloud.cache;
+
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.yanl.cloud.domain.CommonResult;
+import com.yanl.cloud.domain.User;
+import com.yanl.cloud.service.UserService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 进程内的用户缓存（L2），跨请求共享；L1为@CacheResult基于HystrixRequestContext的请求内缓存
+ * 基于Caffeine：
+ * 1. 按数量限制大小，淘汰策略为W-TinyLFU，偶尔访问的用户不会把热点用户挤出去
+ * 2. 写入ttl后过期；写入refresh后再被访问时在后台异步刷新，刷新期间返回旧值，热点用户不会因过期出现延迟抖动
+ * 3. 同一个key同时只有一个线程加载，其他线程等待该结果，避免缓存失效时大量请求同时打到user-service
+ * 加载通过UserService.loadUser（Hystrix命令getUserCacheLoad），加载失败不缓存；
+ * Hystrix stream中getUserCache为总查询次数，getUserCacheLoad为未命中和刷新的次数，
+ * 命中率等统计同时注册到Micrometer（user.cache），可通过/actuator/metrics查看
+ * 缓存内部为异步缓存，get阻塞等待结果，getAsync不阻塞调用线程，命中时返回已完成的future
+ * loadUser是阻塞调用，加载和刷新在单独的有界线程池（user-cache-loader）中执行，不占用ForkJoinPool.commonPool；
+ * 排队的加载超过上限时直接失败，由调用方的Hystrix降级处理
+ */
+@Component
+public class UserCache {
+
+    private final AsyncLoadingCache<Long, CommonResult<User>> cache;
+
+    private final ThreadPoolExecutor loadExecutor;
+
+    public UserCache(@Lazy UserService userService, MeterRegistry meterRegistry,
+                     @Value("${user.cache.max-size:10000}") long maxSize,
+                     @Value("${user.cache.ttl-seconds:300}") long ttl,
+                     @Value("${user.cache.refresh-seconds:60}") long refresh,
+                     @Value("${user.cache.load-threads:8}") int loadThreads,
+                     @Value("${user.cache.load-queue-size:100}") int loadQueueSize) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.loadExecutor = new ThreadPoolExecutor(loadThreads, loadThreads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(loadQueueSize), r -> {
+            Thread thread = new Thread(r, "user-cache-loader-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        loadExecutor.allowCoreThreadTimeOut(true);
+        ExecutorServiceMetrics.monitor(meterRegistry, loadExecutor, "user.cache.loader");
+        this.cache = Caffeine.newBuilder()
+                .executor(loadExecutor)
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl, TimeUnit.SECONDS)
+                .refreshAfterWrite(refresh, TimeUnit.SECONDS)
+                .recordStats()
+                .buildAsync(userService::loadUser);
+        CaffeineCacheMetrics.monitor(meterRegistry, cache.synchronous(), "user.cache");
+    }
+
+    public CommonResult<User> get(Long id) {
+        return cache.synchronous().get(id);
+    }
+
+    public CompletableFuture<CommonResult<User>> getAsync(Long id) {
+        return cache.get(id);
+    }
+
+    public void invalidate(Long id) {
+        cache.synchronous().invalidate(id);
+    }
+
+    @PreDestroy
+    public void close() {
+        loadExecutor.shutdown();
+    }
+}
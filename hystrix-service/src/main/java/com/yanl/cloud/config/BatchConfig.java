@@ -0,0 +1,36 @@
+package com.yanl.cloud.config;
+
+import com.yanl.cloud.batch.RequestBatcher;
+import com.yanl.cloud.domain.User;
+import com.yanl.cloud.service.UserService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Configuration
+public class BatchConfig {
+
+    /**
+     * 按id查询用户的请求合并器，批量查询通过UserService.getUserByIds（带Hystrix保护），结果按id分发
+     * UserService依赖该合并器，这里延迟注入UserService避免循环依赖
+     * @return
+     */
+    @Bean(destroyMethod = "close")
+    public RequestBatcher<Long, User> userBatcher(@Lazy UserService userService, MeterRegistry meterRegistry,
+                                                  @Value("${user.batch.max-size:50}") int maxSize,
+                                                  @Value("${user.batch.max-delay-ms:10}") long maxDelay,
+                                                  @Value("${user.batch.max-concurrent-loads:8}") int maxConcurrentLoads){
+        return new RequestBatcher<>("user.batch", ids -> {
+            Map<Long, User> users = new HashMap<>(ids.size() * 2);
+            for (User user : userService.getUserByIds(ids)) {
+                users.put(user.getId(), user);
+            }
+            return users;
+        }, maxSize, maxDelay, maxConcurrentLoads, meterRegistry);
+    }
+}
@@ -0,0 +1,39 @@
+package com.yanl.cloud.config;
+
+import com.yanl.cloud.limit.AdaptiveConcurrencyLimiter;
+import com.yanl.cloud.limit.ConcurrencyLimitEndpoint;
+import com.yanl.cloud.limit.ConcurrencyLimitInterceptor;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class LimitConfig {
+
+    /**
+     * 调用user-service的自适应并发限制，所有RestTemplate和WebClient请求共享
+     * @return
+     */
+    @Bean
+    public AdaptiveConcurrencyLimiter userServiceLimiter(MeterRegistry meterRegistry,
+                                                         @Value("${user.limiter.initial-limit:20}") int initialLimit,
+                                                         @Value("${user.limiter.min-limit:2}") int minLimit,
+                                                         @Value("${user.limiter.max-limit:1000}") int maxLimit){
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(initialLimit, minLimit, maxLimit);
+        Gauge.builder("user.limiter.limit", limiter, AdaptiveConcurrencyLimiter::getLimit).register(meterRegistry);
+        Gauge.builder("user.limiter.inflight", limiter, AdaptiveConcurrencyLimiter::getInflight).register(meterRegistry);
+        return limiter;
+    }
+
+    @Bean
+    public ConcurrencyLimitInterceptor concurrencyLimitInterceptor(AdaptiveConcurrencyLimiter userServiceLimiter){
+        return new ConcurrencyLimitInterceptor(userServiceLimiter);
+    }
+
+    @Bean
+    public ConcurrencyLimitEndpoint concurrencyLimitEndpoint(AdaptiveConcurrencyLimiter userServiceLimiter){
+        return new ConcurrencyLimitEndpoint(userServiceLimiter);
+    }
+}
@@ -1,5 +1,6 @@
 package com.yanl.cloud.config;
 
+import com.yanl.cloud.limit.ConcurrencyLimitInterceptor;
 import org.springframework.cloud.client.loadbalancer.LoadBalanced;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -10,7 +11,9 @@ public class RibbonConfig {
 
     @Bean
     @LoadBalanced
-    public RestTemplate restTemplate(){
-        return new RestTemplate();
+    public RestTemplate restTemplate(ConcurrencyLimitInterceptor concurrencyLimitInterceptor){
+        RestTemplate restTemplate = new RestTemplate();
+        restTemplate.getInterceptors().add(concurrencyLimitInterceptor);
+        return restTemplate;
     }
 }
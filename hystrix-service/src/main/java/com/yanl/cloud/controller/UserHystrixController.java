@@ -1,6 +1,7 @@
 package com.yanl.cloud.controller;
 
 import cn.hutool.core.thread.ThreadUtil;
+import com.yanl.cloud.bulkhead.CallerBulkheads;
 import com.yanl.cloud.domain.CommonResult;
 import com.yanl.cloud.domain.User;
 import com.yanl.cloud.service.UserService;
@@ -10,9 +11,14 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import javax.servlet.http.HttpServletRequest;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 
+/**
+ * testFallBack、testCommand、testException按调用方在各自的隔离舱中执行，见CallerBulkheads；
+ * 其余接口演示依赖当前线程的请求缓存，在Tomcat线程上同步执行，不经过隔离舱
+ */
 @RestController
 @RequestMapping("/user")
 public class UserHystrixController {
@@ -20,19 +26,22 @@ public class UserHystrixController {
     @Autowired
     private UserService userService;
 
+    @Autowired
+    private CallerBulkheads callerBulkheads;
+
     @GetMapping("/testFallBack/{id}")
-    public CommonResult testFallBack(@PathVariable Long id){
-        return userService.getUser(id);
+    public CommonResult testFallBack(@PathVariable Long id, HttpServletRequest request){
+        return callerBulkheads.execute(callerBulkheads.caller(request), userService.getUser(id)).toBlocking().single();
     }
 
     @GetMapping("/testCommand/{id}")
-    public CommonResult testCommand(@PathVariable Long id){
-        return userService.getUserCommand(id);
+    public CommonResult testCommand(@PathVariable Long id, HttpServletRequest request){
+        return callerBulkheads.execute(callerBulkheads.caller(request), userService.getUserCommand(id)).toBlocking().single();
     }
 
     @GetMapping("/testException/{id}")
-    public CommonResult testException(@PathVariable Long id){
-        return userService.getUserException(id);
+    public CommonResult testException(@PathVariable Long id, HttpServletRequest request){
+        return callerBulkheads.execute(callerBulkheads.caller(request), userService.getUserException(id)).toBlocking().single();
     }
 
     @GetMapping("/testCache/{id}")
@@ -0,0 +1,68 @@
+package com.yanl.cloud.controller;
+
+import com.yanl.cloud.bulkhead.CallerBulkheads;
+import com.yanl.cloud.domain.CommonResult;
+import com.yanl.cloud.domain.User;
+import com.yanl.cloud.service.UserReactiveService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * UserHystrixController的非阻塞版本，接口相同，路径前缀为/user/reactive
+ * 返回Mono时Spring MVC启动Servlet异步请求，Tomcat线程在Mono完成前即被释放
+ * 所有接口按调用方在各自的隔离舱中执行，见CallerBulkheads
+ */
+@RestController
+@RequestMapping("/user/reactive")
+public class UserReactiveController {
+
+    @Autowired
+    private UserReactiveService userReactiveService;
+
+    @Autowired
+    private CallerBulkheads callerBulkheads;
+
+    @GetMapping("/testFallBack/{id}")
+    public Mono<CommonResult<User>> testFallBack(@PathVariable Long id, HttpServletRequest request){
+        return callerBulkheads.execute(callerBulkheads.caller(request), userReactiveService.getUser(id));
+    }
+
+    @GetMapping("/testCommand/{id}")
+    public Mono<CommonResult<User>> testCommand(@PathVariable Long id, HttpServletRequest request){
+        return callerBulkheads.execute(callerBulkheads.caller(request), userReactiveService.getUserCommand(id));
+    }
+
+    @GetMapping("/testException/{id}")
+    public Mono<CommonResult<User>> testException(@PathVariable Long id, HttpServletRequest request){
+        return callerBulkheads.execute(callerBulkheads.caller(request), userReactiveService.getUserException(id));
+    }
+
+    @GetMapping("/testCache/{id}")
+    public Mono<CommonResult<Void>> testCache(@PathVariable Long id, HttpServletRequest request){
+        return callerBulkheads.execute(callerBulkheads.caller(request), userReactiveService.getUserCache(id)
+                .then(userReactiveService.getUserCache(id))
+                .then(userReactiveService.getUserCache(id))
+                .thenReturn(new CommonResult<>("操作成功", 200)));
+    }
+
+    @GetMapping("/testRemoveCache/{id}")
+    public Mono<CommonResult<Void>> testRemoveCache(@PathVariable Long id, HttpServletRequest request){
+        return callerBulkheads.execute(callerBulkheads.caller(request), userReactiveService.getUserCache(id)
+                .then(userReactiveService.removeCache(id))
+                .then(userReactiveService.getUserCache(id))
+                .then(userReactiveService.getUserCache(id))
+                .thenReturn(new CommonResult<>("操作成功", 200)));
+    }
+
+    @GetMapping("/testCollapse")
+    public Mono<CommonResult<Void>> testCollapse(HttpServletRequest request){
+        return callerBulkheads.execute(callerBulkheads.caller(request), userReactiveService.collapse()
+                .thenReturn(new CommonResult<>("操作成功", 200)));
+    }
+}
@@ -1,5 +1,6 @@
 package com.yanl.cloud.domain;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -9,6 +10,11 @@ public class CommonResult<T> {
     private T data;
     private String msg;
     private Integer code;
+    /**
+     * 服务降级时返回的是之前缓存的数据，表示数据已缓存的毫秒数，正常返回时为null
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long staleMillis;
 
     public CommonResult(){}
 
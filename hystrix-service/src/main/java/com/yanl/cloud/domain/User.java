@@ -2,11 +2,21 @@ package com.yanl.cloud.domain;
 
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 
 @Data
+@NoArgsConstructor
 @AllArgsConstructor
 public class User {
     private Long id;
     private String username;
     private String password;
+    /**
+     * user-service中的版本号
+     */
+    private Long version;
+
+    public User(Long id, String username, String password) {
+        this(id, username, password, null);
+    }
 }
@@ -0,0 +1,18 @@
+package com.yanl.cloud.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * user-service批量查询（POST /user/getUserByIds）的结果，users按请求id的顺序排列，missingIds为未找到的id
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserBatch {
+    private List<User> users;
+    private List<Long> missingIds;
+}
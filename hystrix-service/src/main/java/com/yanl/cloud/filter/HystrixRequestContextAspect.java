@@ -0,0 +1,40 @@
+package com.yanl.cloud.filter;
+
+import com.netflix.hystrix.strategy.concurrency.HystrixRequestContext;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestContextHolder;
+
+/**
+ * 在使用请求缓存的Hystrix方法（@CacheResult、@CacheRemove）执行前按需初始化HystrixRequestContext，
+ * 需要在Hystrix的切面之前执行，因此优先级设为最高
+ * 在Web请求中初始化的上下文由HystrixRequestContextFilter在请求结束时关闭，同一请求内的多次调用共享；
+ * 不在Web请求中时（如定时任务）在方法返回后立即关闭
+ */
+@Aspect
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class HystrixRequestContextAspect {
+
+    @Around("@annotation(com.netflix.hystrix.contrib.javanica.cache.annotation.CacheResult)"
+            + " || @annotation(com.netflix.hystrix.contrib.javanica.cache.annotation.CacheRemove)")
+    public Object initializeContext(ProceedingJoinPoint joinPoint) throws Throwable {
+        if (HystrixRequestContext.isCurrentThreadInitialized()) {
+            return joinPoint.proceed();
+        }
+        HystrixRequestContext context = HystrixRequestContext.initializeContext();
+        if (RequestContextHolder.getRequestAttributes() != null) {
+            return joinPoint.proceed();
+        }
+        try {
+            return joinPoint.proceed();
+        } finally {
+            context.close();
+            HystrixRequestContext.setContextOnCurrentThread(null);
+        }
+    }
+}
@@ -15,17 +15,21 @@ import java.io.IOException;
  *
  * 	这里我们通过使用过滤器，在每个请求前后初始化和关闭HystrixRequestContext来解决该问题：
  *
+ * 	大部分请求（如/actuator/hystrix.stream、swagger）并不需要HystrixRequestContext，因此改为按需初始化：
+ * 	只有调用@CacheResult、@CacheRemove方法时才由HystrixRequestContextAspect初始化，过滤器只负责在请求结束时关闭
  */
 @Component
 @WebFilter
 public class HystrixRequestContextFilter implements Filter {
     @Override
     public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse, FilterChain filterChain) throws IOException, ServletException {
-        HystrixRequestContext context = HystrixRequestContext.initializeContext();
         try{
             filterChain.doFilter(servletRequest, servletResponse);
         }finally {
-            context.close();
+            if (HystrixRequestContext.isCurrentThreadInitialized()) {
+                HystrixRequestContext.getContextForCurrentThread().close();
+                HystrixRequestContext.setContextOnCurrentThread(null);
+            }
         }
     }
 }
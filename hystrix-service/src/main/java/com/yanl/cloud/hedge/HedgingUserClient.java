@@ -0,0 +1,225 @@
+package com.yanl.cloud.hedge;
+
+import com.netflix.loadbalancer.ILoadBalancer;
+import com.netflix.loadbalancer.Server;
+import com.yanl.cloud.domain.CommonResult;
+import com.yanl.cloud.domain.User;
+import com.yanl.cloud.limit.ConcurrencyLimitInterceptor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.netflix.ribbon.SpringClientFactory;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoProcessor;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 对冲请求：按id查询用户在超过近期p95响应时间仍未返回（或已经失败）时，向Ribbon选出的另一个实例再发一次，
+ * 取先成功返回的结果，另一个请求被取消；被取消的请求在并发限制中按onIgnore释放，不会降低并发上限
+ * 只用于幂等的GET查询；对冲请求数量不超过总请求数的budget-percent（令牌桶），避免下游整体变慢时请求量翻倍
+ * 指标：user.hedge.latency为首个请求自身的响应时间，只在首个请求成功返回时记录，用于计算对冲延迟；
+ * 被对冲取代而取消的慢请求没有样本，p95会略偏低，多出的对冲由预算限制，
+ * user.hedge.requests按outcome区分sent、win（对冲请求先返回）、loss（首个请求先返回）、budget_exhausted、no_alternative
+ */
+@Component
+public class HedgingUserClient {
+
+    private static final long MIN_SAMPLES = 20;
+
+    private static final ParameterizedTypeReference<CommonResult<User>> USER_TYPE =
+            new ParameterizedTypeReference<CommonResult<User>>() {
+            };
+
+    private final SpringClientFactory springClientFactory;
+
+    private final WebClient webClient;
+
+    private final String serviceId;
+
+    private final boolean enabled;
+
+    private final double budgetRatio;
+
+    private final long minDelayNanos;
+
+    private final long defaultDelayNanos;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Timer latency;
+
+    private double budgetTokens;
+
+    private volatile long hedgeDelayNanos;
+
+    private volatile long delayRefreshTime;
+
+    public HedgingUserClient(SpringClientFactory springClientFactory,
+                             ConcurrencyLimitInterceptor concurrencyLimitInterceptor,
+                             MeterRegistry meterRegistry,
+                             @Value("${service-url.user-service}") String userServiceUrl,
+                             @Value("${user.hedge.enabled:true}") boolean enabled,
+                             @Value("${user.hedge.budget-percent:10}") double budgetPercent,
+                             @Value("${user.hedge.min-delay-ms:5}") long minDelay,
+                             @Value("${user.hedge.default-delay-ms:50}") long defaultDelay) {
+        this.springClientFactory = springClientFactory;
+        // 不经过负载均衡，由这里选择实例，保证对冲请求发往不同的实例
+        this.webClient = WebClient.builder().filter(concurrencyLimitInterceptor).build();
+        this.serviceId = URI.create(userServiceUrl).getHost();
+        this.enabled = enabled;
+        this.budgetRatio = budgetPercent / 100;
+        this.minDelayNanos = TimeUnit.MILLISECONDS.toNanos(minDelay);
+        this.defaultDelayNanos = TimeUnit.MILLISECONDS.toNanos(defaultDelay);
+        this.hedgeDelayNanos = defaultDelayNanos;
+        this.meterRegistry = meterRegistry;
+        this.latency = Timer.builder("user.hedge.latency")
+                .description("按id查询用户时首个请求的响应时间")
+                .publishPercentiles(0.95)
+                .register(meterRegistry);
+    }
+
+    public Mono<CommonResult<User>> getUser(Long id) {
+        return Mono.defer(() -> {
+            Server primary = choose(null);
+            if (primary == null) {
+                return Mono.error(new IllegalStateException("没有可用的" + serviceId + "实例"));
+            }
+            long start = System.nanoTime();
+            Mono<CommonResult<User>> first = fetch(primary, id)
+                    .doOnSuccess(result -> latency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+            if (!enabled) {
+                return first;
+            }
+            depositBudget();
+            AtomicBoolean hedged = new AtomicBoolean();
+            AtomicReference<Throwable> error = new AtomicReference<>();
+            MonoProcessor<Long> primaryFailed = MonoProcessor.create();
+            // 首个请求失败时不再等待，立即发出对冲请求
+            Mono<Response> firstBranch = first.map(result -> new Response(result, false))
+                    .onErrorResume(e -> {
+                        error.compareAndSet(null, e);
+                        primaryFailed.onNext(0L);
+                        return Mono.empty();
+                    });
+            Mono<Response> secondBranch = Mono.first(Mono.delay(Duration.ofNanos(hedgeDelay())), primaryFailed)
+                    .flatMap(tick -> {
+                        Server other = choose(primary);
+                        if (other == null) {
+                            count("no_alternative");
+                            return Mono.empty();
+                        }
+                        if (!withdrawBudget()) {
+                            count("budget_exhausted");
+                            return Mono.empty();
+                        }
+                        hedged.set(true);
+                        count("sent");
+                        return fetch(other, id).map(result -> new Response(result, true));
+                    })
+                    .onErrorResume(e -> {
+                        error.compareAndSet(null, e);
+                        return Mono.empty();
+                    });
+            // 取第一个成功的结果，另一个请求被取消；两个都失败（或未发出对冲请求）时返回首个错误
+            return Flux.merge(firstBranch, secondBranch)
+                    .next()
+                    .switchIfEmpty(Mono.defer(() -> error.get() == null ? Mono.empty() : Mono.error(error.get())))
+                    .map(response -> {
+                        if (response.hedge) {
+                            count("win");
+                        } else if (hedged.get()) {
+                            count("loss");
+                        }
+                        return response.result;
+                    });
+        });
+    }
+
+    private Mono<CommonResult<User>> fetch(Server server, Long id) {
+        return webClient.get()
+                .uri("http://" + server.getHostPort() + "/user/{1}", id)
+                .accept(MediaType.APPLICATION_JSON)
+                .retrieve()
+                .bodyToMono(USER_TYPE);
+    }
+
+    /**
+     * 通过Ribbon选择实例，exclude不为空时选择与其不同的实例，没有时返回null
+     */
+    private Server choose(Server exclude) {
+        ILoadBalancer loadBalancer = springClientFactory.getLoadBalancer(serviceId);
+        if (loadBalancer == null) {
+            return null;
+        }
+        if (exclude == null) {
+            return loadBalancer.chooseServer("default");
+        }
+        int attempts = loadBalancer.getReachableServers().size();
+        for (int i = 0; i < attempts; i++) {
+            Server server = loadBalancer.chooseServer("default");
+            if (server != null && !server.getHostPort().equals(exclude.getHostPort())) {
+                return server;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 近期p95，每秒最多重新计算一次，样本不足时使用默认值
+     */
+    private long hedgeDelay() {
+        long now = System.nanoTime();
+        if (now - delayRefreshTime > TimeUnit.SECONDS.toNanos(1)) {
+            delayRefreshTime = now;
+            long delay = defaultDelayNanos;
+            if (latency.count() >= MIN_SAMPLES) {
+                for (ValueAtPercentile percentile : latency.takeSnapshot().percentileValues()) {
+                    delay = (long) percentile.value(TimeUnit.NANOSECONDS);
+                }
+            }
+            hedgeDelayNanos = Math.max(minDelayNanos, delay);
+        }
+        return hedgeDelayNanos;
+    }
+
+    /**
+     * 每个请求存入budgetRatio个令牌，最多存10个，每次对冲消耗1个
+     */
+    private synchronized void depositBudget() {
+        budgetTokens = Math.min(10, budgetTokens + budgetRatio);
+    }
+
+    private synchronized boolean withdrawBudget() {
+        if (budgetTokens < 1) {
+            return false;
+        }
+        budgetTokens -= 1;
+        return true;
+    }
+
+    private void count(String outcome) {
+        Counter.builder("user.hedge.requests").tag("outcome", outcome).register(meterRegistry).increment();
+    }
+
+    private static class Response {
+        private final CommonResult<User> result;
+        private final boolean hedge;
+
+        Response(CommonResult<User> result, boolean hedge) {
+            this.result = result;
+            this.hedge = hedge;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.yanl.cloud.limit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 基于RTT梯度的自适应并发限制，参考Netflix concurrency-limits的Gradient2算法
+ * 每次调用完成后用本次RTT（shortRtt）与长期平均RTT（longRtt）之比调整并发上限：
+ * newLimit = limit * gradient + queueSize，gradient = clamp(tolerance * longRtt / shortRtt, 0.5, 1)
+ * RTT变长说明下游开始排队，上限随之降低；RTT稳定时每次最多增加queueSize，逐步探测更高的并发；
+ * 超时或下游过载时按backoffRatio乘性减小。并发未达到上限的一半时不增加上限，避免低流量时上限虚高
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    private static final double TOLERANCE = 1.5;
+
+    private static final double SMOOTHING = 0.2;
+
+    private static final double BACKOFF_RATIO = 0.9;
+
+    /**
+     * longRtt的指数加权窗口，约等于最近的600次调用
+     */
+    private static final double LONG_WINDOW = 600;
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final AtomicInteger inflight = new AtomicInteger();
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    private volatile double limit;
+
+    private double longRtt;
+
+    private volatile long lastRtt;
+
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+    }
+
+    /**
+     * 获取许可，超过当前并发上限时返回false，获取成功后必须调用onSuccess、onDropped或onIgnore之一
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inflight.get();
+            if (current >= (int) limit) {
+                rejected.incrementAndGet();
+                return false;
+            }
+            if (inflight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 调用成功，rtt单位纳秒
+     */
+    public void onSuccess(long rtt) {
+        int current = inflight.getAndDecrement();
+        update(rtt, current, false);
+    }
+
+    /**
+     * 调用超时或下游过载
+     */
+    public void onDropped(long rtt) {
+        int current = inflight.getAndDecrement();
+        update(rtt, current, true);
+    }
+
+    /**
+     * 与下游负载无关的失败（如请求被取消前尚未发出），不参与调整
+     */
+    public void onIgnore() {
+        inflight.decrementAndGet();
+    }
+
+    private synchronized void update(long rtt, int inflightBefore, boolean dropped) {
+        lastRtt = rtt;
+        if (dropped) {
+            limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+            return;
+        }
+        if (longRtt == 0) {
+            longRtt = rtt;
+        } else {
+            longRtt = longRtt + (rtt - longRtt) / LONG_WINDOW;
+        }
+        // 下游从变慢中恢复时，让longRtt更快地回落
+        if (longRtt / rtt > 2) {
+            longRtt *= 0.95;
+        }
+        if (inflightBefore < limit / 2) {
+            return;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longRtt / rtt));
+        double queueSize = Math.sqrt(limit);
+        double newLimit = limit * gradient + queueSize;
+        newLimit = limit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+        limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInflight() {
+        return inflight.get();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    public synchronized double getLongRttMillis() {
+        return longRtt / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    public double getLastRttMillis() {
+        return lastRtt / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,31 @@
+package com.yanl.cloud.limit;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * /actuator/concurrencylimit，与/actuator/hystrix.stream一起查看调用user-service的当前并发上限和并发数
+ */
+@Endpoint(id = "concurrencylimit")
+public class ConcurrencyLimitEndpoint {
+
+    private final AdaptiveConcurrencyLimiter limiter;
+
+    public ConcurrencyLimitEndpoint(AdaptiveConcurrencyLimiter limiter) {
+        this.limiter = limiter;
+    }
+
+    @ReadOperation
+    public Map<String, Object> limit() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("limit", limiter.getLimit());
+        result.put("inflight", limiter.getInflight());
+        result.put("rejected", limiter.getRejected());
+        result.put("longRttMillis", limiter.getLongRttMillis());
+        result.put("lastRttMillis", limiter.getLastRttMillis());
+        return result;
+    }
+}
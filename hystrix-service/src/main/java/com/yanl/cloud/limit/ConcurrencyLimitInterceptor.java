@@ -0,0 +1,87 @@
+package com.yanl.cloud.limit;
+
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 对RestTemplate和WebClient的请求应用自适应并发限制
+ * 超过上限时直接抛出LimitExceededException；IO异常和503/504视为下游过载，其他响应按RTT调整上限
+ * 请求被取消（Hystrix超时、对冲请求中较慢的一方）时只释放许可：取消时还没有RTT，按过载处理会在对冲时误降上限，
+ * 下游真正变慢时其他请求的RTT仍会让上限降低
+ */
+public class ConcurrencyLimitInterceptor implements ClientHttpRequestInterceptor, ExchangeFilterFunction {
+
+    private final AdaptiveConcurrencyLimiter limiter;
+
+    public ConcurrencyLimitInterceptor(AdaptiveConcurrencyLimiter limiter) {
+        this.limiter = limiter;
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution) throws IOException {
+        if (!limiter.tryAcquire()) {
+            throw new LimitExceededException(limiter.getLimit());
+        }
+        long start = System.nanoTime();
+        ClientHttpResponse response;
+        try {
+            response = execution.execute(request, body);
+        } catch (IOException | RuntimeException e) {
+            limiter.onDropped(System.nanoTime() - start);
+            throw e;
+        }
+        release(response.getRawStatusCode(), System.nanoTime() - start);
+        return response;
+    }
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        return Mono.defer(() -> {
+            if (!limiter.tryAcquire()) {
+                return Mono.error(new LimitExceededException(limiter.getLimit()));
+            }
+            long start = System.nanoTime();
+            // 完成、出错、取消只会处理其中一个
+            AtomicBoolean released = new AtomicBoolean();
+            return next.exchange(request)
+                    .doOnSuccess(response -> {
+                        if (released.compareAndSet(false, true)) {
+                            if (response == null) {
+                                limiter.onIgnore();
+                            } else {
+                                release(response.rawStatusCode(), System.nanoTime() - start);
+                            }
+                        }
+                    })
+                    .doOnError(e -> {
+                        if (released.compareAndSet(false, true)) {
+                            limiter.onDropped(System.nanoTime() - start);
+                        }
+                    })
+                    .doOnCancel(() -> {
+                        if (released.compareAndSet(false, true)) {
+                            limiter.onIgnore();
+                        }
+                    });
+        });
+    }
+
+    private void release(int status, long rtt) {
+        if (status == HttpStatus.SERVICE_UNAVAILABLE.value() || status == HttpStatus.GATEWAY_TIMEOUT.value()) {
+            limiter.onDropped(rtt);
+        } else {
+            limiter.onSuccess(rtt);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.yanl.cloud.limit;
+
+/**
+ * 调用user-service的并发数超过自适应上限，在Hystrix命令中抛出时会执行降级方法
+ */
+public class LimitExceededException extends RuntimeException {
+
+    public LimitExceededException(int limit) {
+        super("调用user-service的并发数已达上限：" + limit);
+    }
+}
@@ -0,0 +1,74 @@
+package com.yanl.cloud.service;
+
+import com.yanl.cloud.domain.CommonResult;
+import com.yanl.cloud.domain.User;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import rx.Observable;
+import rx.RxReactiveStreams;
+
+import java.time.Duration;
+
+/**
+ * UserService的非阻塞版本，所有方法返回Mono，调用线程不等待结果
+ * Hystrix命令、降级和熔断仍由UserService中的注解完成，这里只负责把结果组合成Mono；
+ * 返回Mono的Controller方法由Spring MVC按Servlet异步请求处理，等待期间Tomcat线程可以处理其他请求
+ */
+@Service
+public class UserReactiveService {
+
+    @Autowired
+    private UserService userService;
+
+    public Mono<CommonResult<User>> getUser(Long id) {
+        return toMono(userService.getUser(id));
+    }
+
+    public Mono<CommonResult<User>> getUserCommand(Long id) {
+        return toMono(userService.getUserCommand(id));
+    }
+
+    public Mono<CommonResult<User>> getUserException(Long id) {
+        return toMono(userService.getUserException(id));
+    }
+
+    public Mono<CommonResult<User>> getUserCache(Long id) {
+        return toMono(userService.observeUserCache(id));
+    }
+
+    /**
+     * 删除通过RestTemplate同步调用，放到boundedElastic线程池中执行，不占用Tomcat线程
+     * @param id
+     * @return
+     */
+    public Mono<CommonResult> removeCache(Long id) {
+        return Mono.fromCallable(() -> userService.removeCache(id))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * 合并请求返回的future在批次查询完成后完成，用户不存在时为空
+     * @param id
+     * @return
+     */
+    public Mono<User> getFutureUser(Long id) {
+        return Mono.fromFuture(() -> userService.getFutureUser(id));
+    }
+
+    /**
+     * 与阻塞版本的testCollapse相同的调用顺序，等待改为定时器，不占用线程
+     * @return
+     */
+    public Mono<Void> collapse() {
+        return Mono.when(getFutureUser(1L), getFutureUser(2L))
+                .then(Mono.delay(Duration.ofMillis(200)))
+                .then(getFutureUser(3L))
+                .then();
+    }
+
+    private static <T> Mono<T> toMono(Observable<T> observable) {
+        return Mono.from(RxReactiveStreams.toPublisher(observable));
+    }
+}
@@ -1,53 +1,106 @@
 package com.yanl.cloud.service;
 
-import cn.hutool.core.bean.BeanUtil;
-import cn.hutool.core.collection.CollUtil;
-import com.netflix.hystrix.contrib.javanica.annotation.HystrixCollapser;
 import com.netflix.hystrix.contrib.javanica.annotation.HystrixCommand;
 import com.netflix.hystrix.contrib.javanica.annotation.HystrixProperty;
+import com.netflix.hystrix.contrib.javanica.annotation.ObservableExecutionMode;
 import com.netflix.hystrix.contrib.javanica.cache.annotation.CacheRemove;
 import com.netflix.hystrix.contrib.javanica.cache.annotation.CacheResult;
-import com.netflix.hystrix.contrib.javanica.command.AsyncResult;
+import com.yanl.cloud.batch.RequestBatcher;
+import com.yanl.cloud.cache.LastKnownGoodCache;
+import com.yanl.cloud.cache.UserCache;
 import com.yanl.cloud.domain.CommonResult;
 import com.yanl.cloud.domain.User;
+import com.yanl.cloud.domain.UserBatch;
+import com.yanl.cloud.hedge.HedgingUserClient;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.client.RestTemplate;
+import reactor.core.publisher.Mono;
+import rx.Observable;
+import rx.RxReactiveStreams;
 
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.Future;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 @Slf4j
 public class UserService {
 
+    private static final ParameterizedTypeReference<CommonResult<User>> USER_TYPE =
+            new ParameterizedTypeReference<CommonResult<User>>() {
+            };
+
+    private static final ParameterizedTypeReference<CommonResult<UserBatch>> USER_BATCH_TYPE =
+            new ParameterizedTypeReference<CommonResult<UserBatch>>() {
+            };
+
     @Autowired
     private RestTemplate restTemplate;
 
+    @Autowired
+    private HedgingUserClient hedgingUserClient;
+
+    @Autowired
+    private RequestBatcher<Long, User> userBatcher;
+
+    @Autowired
+    private UserCache userCache;
+
+    @Autowired
+    private LastKnownGoodCache lastKnownGoodCache;
+
     @Value("${service-url.user-service}")
     private String userServiceUrl;
 
 
     /**
      * 服务降级注解，服务关闭调用getDefaultUser方法
+     * 信号量隔离：命令在调用线程上执行，不经过Hystrix线程池；请求通过非阻塞的WebClient发出，
+     * 返回的Observable在响应到达后完成，等待期间不占用线程，超时后Hystrix取消订阅会同时取消请求并执行降级
+     * 最大并发数见hystrix.command.default.execution.isolation.semaphore.maxConcurrentRequests
      * @param id
      * @return
      */
-    @HystrixCommand(fallbackMethod = "getDefaultUser")
-    public CommonResult getUser(Long id){
-        return restTemplate.getForObject(userServiceUrl + "/user/{1}", CommonResult.class, id);
+    @HystrixCommand(fallbackMethod = "observeDefaultUser",
+        observableExecutionMode = ObservableExecutionMode.LAZY,
+        commandProperties = @HystrixProperty(name = "execution.isolation.strategy", value = "SEMAPHORE"))
+    public Observable<CommonResult<User>> getUser(Long id){
+        return fetchUser(id);
     }
 
     /**
-     * 服务不可用时调用
+     * 非阻塞地查询用户，订阅时才发出请求，取消订阅时取消请求；响应慢时会向另一个实例发出对冲请求
+     * @param id
+     * @return
+     */
+    private Observable<CommonResult<User>> fetchUser(Long id){
+        return RxReactiveStreams.toObservable(hedgingUserClient.getUser(id))
+                .doOnNext(result -> lastKnownGoodCache.put(id, result));
+    }
+
+    public Observable<CommonResult<User>> observeDefaultUser(Long id){
+        return Observable.just(getDefaultUser(id));
+    }
+
+    /**
+     * 服务不可用时调用，优先返回该用户最近一次查询成功的数据
      * @param id
      * @return
      */
     public CommonResult<User> getDefaultUser(@PathVariable Long id){
+        CommonResult<User> stale = lastKnownGoodCache.getStale(id);
+        if (stale != null) {
+            return stale;
+        }
         User defaultUser = new User(-1L, "default", "123456");
         return new CommonResult<>(defaultUser);
     }
@@ -57,16 +110,18 @@ public class UserService {
      * ignoreExceptions：忽略某些异常，不发生服务降级
      * commandKey：命令名称，用于区分不同的命令
      * groupKey：分组名称，Hystrix会根据不同的分组来统计命令的告警及仪表盘信息
-     * threadPoolKey：线程池名称，用于划分线程池
+     * threadPoolKey：线程池名称，用于划分线程池，信号量隔离时不使用
      * @param id
      * @return
      */
-    @HystrixCommand(fallbackMethod = "getDefaultUser",
+    @HystrixCommand(fallbackMethod = "observeDefaultUser",
         commandKey = "getUserCommand",
         groupKey = "getUserGroup",
-        threadPoolKey = "getUserThreadPool")
-    public CommonResult getUserCommand(@PathVariable Long id){
-        return restTemplate.getForObject(userServiceUrl + "/user/{1}", CommonResult.class, id);
+        threadPoolKey = "getUserThreadPool",
+        observableExecutionMode = ObservableExecutionMode.LAZY,
+        commandProperties = @HystrixProperty(name = "execution.isolation.strategy", value = "SEMAPHORE"))
+    public Observable<CommonResult<User>> getUserCommand(@PathVariable Long id){
+        return fetchUser(id);
     }
 
     /**
@@ -74,29 +129,73 @@ public class UserService {
      * @param id
      * @return
      */
-    @HystrixCommand(fallbackMethod = "getDefaultUser2", ignoreExceptions = {NullPointerException.class})
-    public CommonResult getUserException(Long id){
+    @HystrixCommand(fallbackMethod = "observeDefaultUser2", ignoreExceptions = {NullPointerException.class},
+        observableExecutionMode = ObservableExecutionMode.LAZY,
+        commandProperties = @HystrixProperty(name = "execution.isolation.strategy", value = "SEMAPHORE"))
+    public Observable<CommonResult<User>> getUserException(Long id){
         if(id == 1){
             throw new IndexOutOfBoundsException();
         }else if(id == 2){
             throw new NullPointerException();
         }
-        return restTemplate.getForObject(userServiceUrl + "/user/{1}", CommonResult.class, id);
+        return fetchUser(id);
     }
 
 
 
     public CommonResult<User> getDefaultUser2(@PathVariable Long id, Throwable e){
         log.error("getDefaultUser2 id:{}, throwable class: {}", id, e.getClass());
+        CommonResult<User> stale = lastKnownGoodCache.getStale(id);
+        if (stale != null) {
+            return stale;
+        }
         User user = new User(-2L, "default2", "123456");
         return new CommonResult<>(user);
     }
 
+    public Observable<CommonResult<User>> observeDefaultUser2(Long id, Throwable e){
+        return Observable.just(getDefaultUser2(id, e));
+    }
+
+    /**
+     * 两级缓存：@CacheResult为请求内缓存，未命中时查询进程内的userCache，仍未命中才调用user-service
+     * 大部分请求在内存中完成，使用信号量隔离；未命中时的加载由线程隔离的loadUser执行，超时仍然有效
+     * @param id
+     * @return
+     */
     @CacheResult(cacheKeyMethod = "getCacheKey")
-    @HystrixCommand(fallbackMethod = "getDefaultUser", commandKey = "getUserCache")
-    public CommonResult getUserCache(Long id){
+    @HystrixCommand(fallbackMethod = "getDefaultUser", commandKey = "getUserCache",
+        commandProperties = @HystrixProperty(name = "execution.isolation.strategy", value = "SEMAPHORE"))
+    public CommonResult<User> getUserCache(Long id){
         log.info("getUserCache id:{}", id);
-        return restTemplate.getForObject(userServiceUrl + "/user/{1}", CommonResult.class, id);
+        return userCache.get(id);
+    }
+
+    /**
+     * getUserCache的非阻塞版本，不经过@CacheResult：请求内缓存绑定在线程上，异步执行时不可用，
+     * 同一用户的并发查询由userCache合并为一次加载
+     * @param id
+     * @return
+     */
+    @HystrixCommand(fallbackMethod = "observeDefaultUser",
+        observableExecutionMode = ObservableExecutionMode.LAZY,
+        commandProperties = @HystrixProperty(name = "execution.isolation.strategy", value = "SEMAPHORE"))
+    public Observable<CommonResult<User>> observeUserCache(Long id){
+        return RxReactiveStreams.toObservable(Mono.fromFuture(() -> userCache.getAsync(id)));
+    }
+
+    /**
+     * userCache未命中或刷新时调用，不设置降级方法，失败时不缓存
+     * @param id
+     * @return
+     */
+    @HystrixCommand(commandKey = "getUserCacheLoad")
+    public CommonResult<User> loadUser(Long id){
+        log.info("loadUser id:{}", id);
+        CommonResult<User> result = restTemplate.exchange(userServiceUrl + "/user/{1}",
+                HttpMethod.GET, jsonRequest(), USER_TYPE, id).getBody();
+        lastKnownGoodCache.put(id, result);
+        return result;
     }
 
     /**
@@ -112,30 +211,49 @@ public class UserService {
     @HystrixCommand
     public CommonResult removeCache(Long id){
         log.info("removeCache id:{}", id);
-        return restTemplate.postForObject(userServiceUrl + "/user/delete/{1}",null, CommonResult.class, id);
+        CommonResult result = restTemplate.postForObject(userServiceUrl + "/user/delete/{1}",null, CommonResult.class, id);
+        // 删除成功后再清除，避免删除前被其他请求重新加载
+        userCache.invalidate(id);
+        return result;
     }
 
-    @HystrixCollapser(batchMethod = "getUserByIds", collapserProperties = {
-        @HystrixProperty(name = "timerDelayInMilliseconds", value = "100")
-    })
-    public Future<User> getFutureUser(Long id){
-        return new AsyncResult<User>(){
-            public User invoke(){
-                CommonResult commonResult = restTemplate.getForObject(userServiceUrl + "/user/{1}", CommonResult.class, id);
-                Map data = (Map) commonResult.getData();
-                User user = BeanUtil.mapToBean(data, User.class, true);
-                log.info("getUserById username:{}", user.getUsername());
-                return user;
-            }
-        };
+    /**
+     * 合并请求：短时间内的多个查询由userBatcher合并为一次getUserByIds调用，
+     * 流量低时立即发出，流量高时最多等待user.batch.max-delay-ms或凑满user.batch.max-size
+     * @param id
+     * @return 用户不存在时结果为null
+     */
+    public CompletableFuture<User> getFutureUser(Long id){
+        return userBatcher.submit(id);
     }
 
+    /**
+     * id通过请求体传递，合并后的批次较大时不会超出查询字符串长度限制
+     * @param ids
+     * @return 找到的用户，不存在的id不在结果中
+     */
     @HystrixCommand
     public List<User> getUserByIds(List<Long> ids){
         log.info("getUserByIds:{}", ids);
-        List user = restTemplate.getForObject(userServiceUrl + "/user/getUserByIds?ids={1}", List.class, CollUtil.join(ids, ","));
-        log.info(user.toString());
-        return user;
+        CommonResult<UserBatch> result = restTemplate.exchange(userServiceUrl + "/user/getUserByIds",
+                HttpMethod.POST, jsonRequest(ids), USER_BATCH_TYPE).getBody();
+        return result.getData().getUsers();
+    }
+
+    /**
+     * 只接受JSON，避免与jackson-dataformat-xml协商出XML；响应按ParameterizedTypeReference直接反序列化为User，不经过Map
+     */
+    private HttpEntity<Void> jsonRequest(){
+        return jsonRequest(null);
+    }
+
+    private <T> HttpEntity<T> jsonRequest(T body){
+        HttpHeaders headers = new HttpHeaders();
+        headers.setAccept(Collections.singletonList(MediaType.APPLICATION_JSON));
+        if (body != null) {
+            headers.setContentType(MediaType.APPLICATION_JSON);
+        }
+        return new HttpEntity<>(body, headers);
     }
 
 
@@ -0,0 +1,89 @@
+package com.yanl.cloud.batch;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RequestBatcherTest {
+
+    @Test
+    void routesResultsByKey() throws Exception {
+        List<List<Long>> loads = new ArrayList<>();
+        RequestBatcher<Long, String> batcher = new RequestBatcher<>("test", ids -> {
+            synchronized (loads) {
+                loads.add(ids);
+            }
+            Map<Long, String> values = new HashMap<>();
+            for (Long id : ids) {
+                if (id != 3) {
+                    values.put(id, "user" + id);
+                }
+            }
+            return values;
+        }, 10, 50, 2, new SimpleMeterRegistry());
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (long id : new long[]{1, 2, 3, 2}) {
+            futures.add(batcher.submit(id));
+        }
+        assertThat(futures.get(0).get(1, TimeUnit.SECONDS)).isEqualTo("user1");
+        assertThat(futures.get(1).get(1, TimeUnit.SECONDS)).isEqualTo("user2");
+        assertThat(futures.get(2).get(1, TimeUnit.SECONDS)).isNull();
+        assertThat(futures.get(3).get(1, TimeUnit.SECONDS)).isEqualTo("user2");
+        // 相同的key只查询一次
+        assertThat(loads.stream().mapToInt(List::size).sum()).isEqualTo(3);
+        batcher.close();
+    }
+
+    @Test
+    void closeFailsPendingRequests() {
+        RequestBatcher<Long, String> batcher = new RequestBatcher<>("test", ids -> new HashMap<>(),
+                100, 60000, 1, new SimpleMeterRegistry());
+        // 空闲后的第一个请求会立即发出，之后的请求间隔很短，会等待合并
+        CompletableFuture<String> first = batcher.submit(1L);
+        first.join();
+        batcher.submit(2L);
+        CompletableFuture<String> pending = batcher.submit(3L);
+        batcher.close();
+        assertThatThrownBy(pending::get).isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(IllegalStateException.class);
+        assertThat(batcher.submit(4L)).isCompletedExceptionally();
+    }
+
+    @Test
+    void rejectsBatchesBeyondLoadCapacity() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        RequestBatcher<Long, String> batcher = new RequestBatcher<>("test", ids -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new HashMap<>();
+        }, 1, 1, 1, new SimpleMeterRegistry());
+        // 每批一个请求：一批执行、一批排队，之后的批次被拒绝
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (long id = 1; id <= 5; id++) {
+            futures.add(batcher.submit(id));
+            Thread.sleep(20);
+        }
+        release.countDown();
+        assertThat(futures.get(0).get(1, TimeUnit.SECONDS)).isNull();
+        assertThat(futures.get(1).get(1, TimeUnit.SECONDS)).isNull();
+        for (CompletableFuture<String> future : futures.subList(2, 5)) {
+            assertThatThrownBy(future::get).hasCauseInstanceOf(RejectedExecutionException.class);
+        }
+        batcher.close();
+    }
+}
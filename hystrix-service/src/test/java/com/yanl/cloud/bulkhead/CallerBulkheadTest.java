@@ -0,0 +1,84 @@
+package com.yanl.cloud.bulkhead;
+
+import org.junit.jupiter.api.Test;
+import rx.Subscription;
+import rx.observers.TestSubscriber;
+import rx.subjects.PublishSubject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CallerBulkheadTest {
+
+    @Test
+    void queuesBeyondLimitAndStartsInArrivalOrder() {
+        CallerBulkhead bulkhead = new CallerBulkhead(2);
+        List<PublishSubject<String>> calls = new ArrayList<>();
+        List<TestSubscriber<String>> subscribers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            PublishSubject<String> call = PublishSubject.create();
+            TestSubscriber<String> subscriber = new TestSubscriber<>();
+            bulkhead.run(call).subscribe(subscriber);
+            calls.add(call);
+            subscribers.add(subscriber);
+        }
+        assertThat(calls.get(0).hasObservers()).isTrue();
+        assertThat(calls.get(1).hasObservers()).isTrue();
+        assertThat(calls.get(2).hasObservers()).isFalse();
+        assertThat(bulkhead.getRunning()).isEqualTo(2);
+        assertThat(bulkhead.getWaiting()).isEqualTo(2);
+
+        calls.get(1).onNext("b");
+        calls.get(1).onCompleted();
+        subscribers.get(1).assertValue("b");
+        // 名额直接转给队首的请求，执行中的数量不变
+        assertThat(calls.get(2).hasObservers()).isTrue();
+        assertThat(calls.get(3).hasObservers()).isFalse();
+        assertThat(bulkhead.getRunning()).isEqualTo(2);
+
+        calls.get(0).onError(new IllegalStateException("boom"));
+        subscribers.get(0).assertError(IllegalStateException.class);
+        assertThat(calls.get(3).hasObservers()).isTrue();
+        calls.get(2).onCompleted();
+        calls.get(3).onCompleted();
+        assertThat(bulkhead.getRunning()).isZero();
+        assertThat(bulkhead.getWaiting()).isZero();
+    }
+
+    @Test
+    void unsubscribingWhileQueuedGivesUpThePlaceWithoutTakingASlot() {
+        CallerBulkhead bulkhead = new CallerBulkhead(1);
+        PublishSubject<String> first = PublishSubject.create();
+        PublishSubject<String> queued = PublishSubject.create();
+        PublishSubject<String> last = PublishSubject.create();
+        bulkhead.run(first).subscribe(new TestSubscriber<>());
+        Subscription cancelled = bulkhead.run(queued).subscribe(new TestSubscriber<>());
+        bulkhead.run(last).subscribe(new TestSubscriber<>());
+        cancelled.unsubscribe();
+        assertThat(bulkhead.getWaiting()).isEqualTo(1);
+
+        first.onCompleted();
+        assertThat(queued.hasObservers()).isFalse();
+        assertThat(last.hasObservers()).isTrue();
+        last.onCompleted();
+        assertThat(bulkhead.getRunning()).isZero();
+    }
+
+    @Test
+    void unsubscribingWhileRunningReleasesOnce() {
+        CallerBulkhead bulkhead = new CallerBulkhead(1);
+        PublishSubject<String> running = PublishSubject.create();
+        PublishSubject<String> next = PublishSubject.create();
+        Subscription subscription = bulkhead.run(running).subscribe(new TestSubscriber<>());
+        bulkhead.run(next).subscribe(new TestSubscriber<>());
+        subscription.unsubscribe();
+        assertThat(next.hasObservers()).isTrue();
+        // 已取消的请求再结束不会重复释放
+        running.onCompleted();
+        assertThat(bulkhead.getRunning()).isEqualTo(1);
+        next.onCompleted();
+        assertThat(bulkhead.getRunning()).isZero();
+    }
+}
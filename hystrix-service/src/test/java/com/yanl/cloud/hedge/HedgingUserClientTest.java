@@ -0,0 +1,121 @@
+package com.yanl.cloud.hedge;
+
+import com.netflix.loadbalancer.ILoadBalancer;
+import com.netflix.loadbalancer.Server;
+import com.sun.net.httpserver.HttpServer;
+import com.yanl.cloud.domain.CommonResult;
+import com.yanl.cloud.domain.User;
+import com.yanl.cloud.limit.AdaptiveConcurrencyLimiter;
+import com.yanl.cloud.limit.ConcurrencyLimitInterceptor;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.netflix.ribbon.SpringClientFactory;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class HedgingUserClientTest {
+
+    private final List<HttpServer> servers = new ArrayList<>();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(20, 1, 100);
+
+    @AfterEach
+    void stop() {
+        servers.forEach(server -> server.stop(0));
+    }
+
+    @Test
+    void failedPrimaryIsHedgedImmediately() {
+        Server failing = stub(500, 0, "user-a");
+        Server healthy = stub(200, 0, "user-b");
+        HedgingUserClient client = client(1000, failing, healthy);
+        long start = System.nanoTime();
+        CommonResult<User> result = client.getUser(1L).block(Duration.ofSeconds(5));
+        assertThat(result.getData().getUsername()).isEqualTo("user-b");
+        // 不等对冲延迟（1秒）
+        assertThat(System.nanoTime() - start).isLessThan(TimeUnit.MILLISECONDS.toNanos(800));
+        assertThat(meterRegistry.counter("user.hedge.requests", "outcome", "win").count()).isEqualTo(1);
+    }
+
+    @Test
+    void failsOnlyWhenBothRequestsFail() {
+        HedgingUserClient client = client(10, stub(500, 0, "user-a"), stub(503, 0, "user-b"));
+        assertThatThrownBy(() -> client.getUser(1L).block(Duration.ofSeconds(5)))
+                .isInstanceOf(WebClientResponseException.class);
+        assertThat(limiter.getInflight()).isZero();
+    }
+
+    @Test
+    void slowPrimaryLosesWithoutLoweringLimitOrLatencySample() {
+        HedgingUserClient client = client(20, stub(200, 500, "user-a"), stub(200, 0, "user-b"));
+        CommonResult<User> result = client.getUser(1L).block(Duration.ofSeconds(5));
+        assertThat(result.getData().getUsername()).isEqualTo("user-b");
+        // 被取消的首个请求按onIgnore释放，且不记录延迟样本
+        assertThat(limiter.getLimit()).isEqualTo(20);
+        assertThat(limiter.getInflight()).isZero();
+        assertThat(meterRegistry.timer("user.hedge.latency").count()).isZero();
+    }
+
+    private HedgingUserClient client(long hedgeDelay, Server... instances) {
+        ILoadBalancer loadBalancer = mock(ILoadBalancer.class);
+        AtomicInteger next = new AtomicInteger();
+        when(loadBalancer.chooseServer(anyString()))
+                .thenAnswer(invocation -> instances[next.getAndIncrement() % instances.length]);
+        when(loadBalancer.getReachableServers()).thenReturn(Arrays.asList(instances));
+        SpringClientFactory springClientFactory = mock(SpringClientFactory.class);
+        when(springClientFactory.getLoadBalancer("user-service")).thenReturn(loadBalancer);
+        return new HedgingUserClient(springClientFactory, new ConcurrencyLimitInterceptor(limiter), meterRegistry,
+                "http://user-service", true, 100, 1, hedgeDelay);
+    }
+
+    /**
+     * 本地的user-service桩，按指定状态码和延迟返回用户
+     */
+    private Server stub(int status, long delayMillis, String username) {
+        try {
+            HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            server.setExecutor(Executors.newCachedThreadPool());
+            server.createContext("/user", exchange -> {
+                try {
+                    Thread.sleep(delayMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                byte[] body = ("{\"data\":{\"id\":1,\"username\":\"" + username + "\",\"password\":\"p\",\"version\":1},"
+                        + "\"msg\":\"操作成功\",\"code\":200}").getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(status, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                } catch (IOException e) {
+                    // 请求被取消时连接已关闭
+                }
+            });
+            server.start();
+            servers.add(server);
+            return new Server("127.0.0.1", server.getAddress().getPort());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.yanl.cloud.limit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    private static final long RTT = TimeUnit.MILLISECONDS.toNanos(10);
+
+    @Test
+    void rejectsBeyondLimit() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 1, 10);
+        assertThat(limiter.tryAcquire()).isTrue();
+        assertThat(limiter.tryAcquire()).isTrue();
+        assertThat(limiter.tryAcquire()).isFalse();
+        assertThat(limiter.getRejected()).isEqualTo(1);
+        limiter.onSuccess(RTT);
+        assertThat(limiter.tryAcquire()).isTrue();
+    }
+
+    @Test
+    void growsWhileRttIsStableAndShrinksWhenItRises() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 1, 100);
+        // 并发保持在上限附近，RTT不变时上限逐步升高
+        for (int i = 0; i < 200; i++) {
+            saturate(limiter, RTT);
+        }
+        int grown = limiter.getLimit();
+        assertThat(grown).isGreaterThan(20);
+        // RTT变为原来的4倍，超出容忍度，上限下降
+        for (int i = 0; i < 20; i++) {
+            saturate(limiter, RTT * 4);
+        }
+        assertThat(limiter.getLimit()).isLessThan(grown);
+        assertThat(limiter.getInflight()).isZero();
+    }
+
+    @Test
+    void backsOffOnDropAndIgnoresCancellation() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(20, 5, 100);
+        assertThat(limiter.tryAcquire()).isTrue();
+        limiter.onDropped(RTT);
+        assertThat(limiter.getLimit()).isEqualTo(18);
+        for (int i = 0; i < 100; i++) {
+            limiter.tryAcquire();
+            limiter.onDropped(RTT);
+        }
+        assertThat(limiter.getLimit()).isEqualTo(5);
+        limiter.tryAcquire();
+        limiter.onIgnore();
+        assertThat(limiter.getLimit()).isEqualTo(5);
+        assertThat(limiter.getInflight()).isZero();
+    }
+
+    @Test
+    void cancelledExchangeReleasesPermitWithoutBackoff() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(20, 1, 100);
+        ConcurrencyLimitInterceptor interceptor = new ConcurrencyLimitInterceptor(limiter);
+        ClientRequest request = ClientRequest.create(HttpMethod.GET, URI.create("http://user-service/user/1")).build();
+        Disposable subscription = interceptor.filter(request, r -> Mono.<ClientResponse>never()).subscribe();
+        assertThat(limiter.getInflight()).isEqualTo(1);
+        subscription.dispose();
+        assertThat(limiter.getInflight()).isZero();
+        assertThat(limiter.getLimit()).isEqualTo(20);
+    }
+
+    /**
+     * 占满当前上限后逐个以指定RTT完成
+     */
+    private static void saturate(AdaptiveConcurrencyLimiter limiter, long rtt) {
+        int acquired = 0;
+        while (limiter.tryAcquire()) {
+            acquired++;
+        }
+        for (int i = 0; i < acquired; i++) {
+            limiter.onSuccess(rtt);
+        }
+    }
+}
@@ -1,16 +1,82 @@
 package com.yanl.cloud.config;
 
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cloud.client.loadbalancer.LoadBalanced;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
 import org.springframework.web.client.RestTemplate;
 
+import java.util.List;
+
 @Configuration
 public class RibbonConfig {
 
+    private static final MediaType SMILE = MediaType.valueOf("application/x-jackson-smile");
+
+    private static final String ACCEPT = "application/x-jackson-smile, application/json;q=0.9";
+
+    @Value("${user.smile.enabled:true}")
+    private boolean smileEnabled;
+
     @Bean
+    @Primary
     @LoadBalanced
-    public RestTemplate restTemplate(){
-        return new RestTemplate();
+    public RestTemplate restTemplate(Jackson2ObjectMapperBuilder objectMapperBuilder){
+        return createRestTemplate(objectMapperBuilder);
+    }
+
+    /**
+     * 不经过负载均衡，用于直接访问用户所在分片的实例
+     * @return
+     */
+    @Bean
+    public RestTemplate shardRestTemplate(Jackson2ObjectMapperBuilder objectMapperBuilder){
+        return createRestTemplate(objectMapperBuilder);
+    }
+
+    /**
+     * eureka引入的jackson-dataformat-xml使RestTemplate默认的XML转换器排在JSON之前，请求体会编码为XML，因此把JSON转换器移到最前面
+     * jackson-dataformat-smile在classpath中时还包含Smile转换器，排在JSON之后，请求体仍使用JSON编码，未开启Smile的user-service也能处理；
+     * 开启Smile时把它换成Boot配置的ObjectMapper，并且只协商响应：能按Smile读取响应时，把请求头Accept改为Smile优先（与feign-service相同），
+     * user-service优先返回Smile，未开启Smile时按Accept中的JSON返回，仍可正常解码
+     */
+    private RestTemplate createRestTemplate(Jackson2ObjectMapperBuilder objectMapperBuilder){
+        RestTemplate restTemplate = new RestTemplate();
+        List<HttpMessageConverter<?>> converters = restTemplate.getMessageConverters();
+        converters.stream().filter(converter -> converter instanceof MappingJackson2HttpMessageConverter).findFirst()
+                .ifPresent(json -> {
+                    converters.remove(json);
+                    converters.add(0, json);
+                });
+        if (smileEnabled) {
+            for (int i = 0; i < converters.size(); i++) {
+                if (converters.get(i) instanceof MappingJackson2SmileHttpMessageConverter) {
+                    converters.set(i, new MappingJackson2SmileHttpMessageConverter(objectMapperBuilder.factory(new SmileFactory()).build()));
+                }
+            }
+            restTemplate.getInterceptors().add(smileAcceptInterceptor());
+        }
+        return restTemplate;
+    }
+
+    /**
+     * RestTemplate按响应类型把所有可读取的类型写入Accept，其中有Smile时才改为Smile优先
+     */
+    private static ClientHttpRequestInterceptor smileAcceptInterceptor(){
+        return (request, body, execution) -> {
+            if (request.getHeaders().getAccept().contains(SMILE)) {
+                request.getHeaders().set(HttpHeaders.ACCEPT, ACCEPT);
+            }
+            return execution.execute(request, body);
+        };
     }
 }
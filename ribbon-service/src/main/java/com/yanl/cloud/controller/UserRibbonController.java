@@ -2,8 +2,10 @@ package com.yanl.cloud.controller;
 
 import com.yanl.cloud.domain.CommonResult;
 import com.yanl.cloud.domain.User;
+import com.yanl.cloud.shard.UserShardLocator;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -15,11 +17,22 @@ public class UserRibbonController {
     @Autowired
     private RestTemplate restTemplate;
 
+    @Autowired
+    @Qualifier("shardRestTemplate")
+    private RestTemplate shardRestTemplate;
+
+    @Autowired
+    private UserShardLocator userShardLocator;
+
     @Value("${service-url.user-service}")
     private String userServiceUrl;
 
     @GetMapping("/{id}")
     public CommonResult getUser(@PathVariable Long id){
+        String shardUrl = userShardLocator.locate(id);
+        if (shardUrl != null) {
+            return shardRestTemplate.getForObject(shardUrl + "/user/{1}", CommonResult.class, id);
+        }
         return restTemplate.getForObject(userServiceUrl + "/user/{1}", CommonResult.class, id);
     }
 
@@ -45,16 +58,28 @@ public class UserRibbonController {
 
     @PostMapping("/create")
     public CommonResult create(@RequestBody User user){
+        String shardUrl = userShardLocator.locate(user.getId());
+        if (shardUrl != null) {
+            return shardRestTemplate.postForObject(shardUrl + "/user/create", user, CommonResult.class);
+        }
         return restTemplate.postForObject(userServiceUrl + "/user/create", user, CommonResult.class);
     }
 
     @PostMapping("/update")
     public CommonResult update(@RequestBody User user){
+        String shardUrl = userShardLocator.locate(user.getId());
+        if (shardUrl != null) {
+            return shardRestTemplate.postForObject(shardUrl + "/user/update", user, CommonResult.class);
+        }
         return restTemplate.postForObject(userServiceUrl + "/user/update", user, CommonResult.class);
     }
 
     @PostMapping("/delete/{id}")
     public CommonResult delete(@PathVariable Long id){
+        String shardUrl = userShardLocator.locate(id);
+        if (shardUrl != null) {
+            return shardRestTemplate.postForObject(shardUrl + "/user/delete/{1}", null, CommonResult.class, id);
+        }
         return restTemplate.postForObject(userServiceUrl + "/user/delete/{1}", null, CommonResult.class, id);
     }
 }
@@ -0,0 +1,68 @@
+package com.yanl.cloud.shard;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.cloud.client.discovery.event.HeartbeatEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 根据用户id找到所在分片的user-service实例，user-service开启分片（user.shard.enabled=true）时同步开启
+ * 实例列表来自Eureka，每次Eureka客户端刷新注册表（HeartbeatEvent）时重建哈希环
+ */
+@Component
+public class UserShardLocator {
+
+    @Autowired
+    private DiscoveryClient discoveryClient;
+
+    @Value("${user.shard.enabled:false}")
+    private boolean enabled;
+
+    @Value("${user.shard.service-id:user-service}")
+    private String serviceId;
+
+    @Value("${user.shard.virtual-nodes:160}")
+    private int virtualNodes;
+
+    private volatile UserShardRing ring;
+
+    private volatile Map<String, String> shardUris;
+
+    @EventListener(HeartbeatEvent.class)
+    public void refresh() {
+        if (!enabled) {
+            return;
+        }
+        Map<String, String> uris = new HashMap<>();
+        for (ServiceInstance instance : discoveryClient.getInstances(serviceId)) {
+            if (instance.getInstanceId() != null) {
+                uris.put(instance.getInstanceId(), instance.getUri().toString());
+            }
+        }
+        UserShardRing current = ring;
+        if (current == null || !current.getNodes().equals(uris.keySet())) {
+            ring = new UserShardRing(uris.keySet(), virtualNodes);
+        }
+        shardUris = uris;
+    }
+
+    /**
+     * @return id所在实例的地址，如 http://192.168.1.2:8201，未开启分片或暂时无法确定时返回null，此时按负载均衡访问
+     */
+    public String locate(Long id) {
+        if (!enabled || id == null) {
+            return null;
+        }
+        if (ring == null) {
+            refresh();
+        }
+        String owner = ring.owner(id);
+        return owner == null ? null : shardUris.get(owner);
+    }
+}
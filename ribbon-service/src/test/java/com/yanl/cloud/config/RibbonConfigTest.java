@@ -0,0 +1,77 @@
+package com.yanl.cloud.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.module.paramnames.ParameterNamesModule;
+import com.yanl.cloud.domain.CommonResult;
+import com.yanl.cloud.domain.User;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.content;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.header;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.method;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+class RibbonConfigTest {
+
+    private static final String SMILE_FIRST = "application/x-jackson-smile, application/json;q=0.9";
+
+    @Test
+    void negotiatesSmileResponsesButSendsJsonBodies() throws Exception {
+        RestTemplate restTemplate = restTemplate(true);
+        MockRestServiceServer server = MockRestServiceServer.bindTo(restTemplate).build();
+        byte[] smile = new ObjectMapper(new SmileFactory())
+                .writeValueAsBytes(new CommonResult<>(new User(1L, "ly", "5211")));
+        server.expect(requestTo("http://user-service/user/create"))
+                .andExpect(method(HttpMethod.POST))
+                .andExpect(header(HttpHeaders.ACCEPT, SMILE_FIRST))
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(content().json("{\"id\":1,\"username\":\"ly\",\"password\":\"5211\"}"))
+                .andRespond(withSuccess(smile, MediaType.valueOf("application/x-jackson-smile")));
+        CommonResult<?> result = restTemplate.postForObject("http://user-service/user/create",
+                new User(1L, "ly", "5211"), CommonResult.class);
+        assertThat(((Map<?, ?>) result.getData()).get("username")).isEqualTo("ly");
+        server.verify();
+    }
+
+    @Test
+    void decodesJsonFromInstancesWithoutSmile() {
+        RestTemplate restTemplate = restTemplate(true);
+        MockRestServiceServer server = MockRestServiceServer.bindTo(restTemplate).build();
+        server.expect(requestTo("http://user-service/user/1"))
+                .andExpect(header(HttpHeaders.ACCEPT, SMILE_FIRST))
+                .andRespond(withSuccess("{\"code\":200}", MediaType.APPLICATION_JSON));
+        assertThat(restTemplate.getForObject("http://user-service/user/1", CommonResult.class).getCode()).isEqualTo(200);
+        server.verify();
+    }
+
+    @Test
+    void disabledSmileSendsJsonWithDefaultAccept() {
+        RestTemplate restTemplate = restTemplate(false);
+        MockRestServiceServer server = MockRestServiceServer.bindTo(restTemplate).build();
+        server.expect(requestTo("http://user-service/user/create"))
+                .andExpect(request -> assertThat(request.getHeaders().getFirst(HttpHeaders.ACCEPT)).isNotEqualTo(SMILE_FIRST))
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andRespond(withSuccess("{\"code\":200}", MediaType.APPLICATION_JSON));
+        assertThat(restTemplate.postForObject("http://user-service/user/create", new User(1L, "ly", "5211"),
+                CommonResult.class).getCode()).isEqualTo(200);
+        server.verify();
+    }
+
+    private static RestTemplate restTemplate(boolean smileEnabled) {
+        RibbonConfig config = new RibbonConfig();
+        ReflectionTestUtils.setField(config, "smileEnabled", smileEnabled);
+        return config.shardRestTemplate(Jackson2ObjectMapperBuilder.json().modulesToInstall(new ParameterNamesModule()));
+    }
+}
@@ -0,0 +1,109 @@
+package com.yanl.cloud.benchmark;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.module.paramnames.ParameterNamesModule;
+import com.yanl.cloud.domain.CommonResult;
+import com.yanl.cloud.domain.User;
+import com.yanl.cloud.domain.UserBatch;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 比较JSON、Smile、CBOR编码CommonResult的体积和序列化、反序列化耗时，ObjectMapper与SmileConfig一样由Jackson2ObjectMapperBuilder创建，
+ * 并与Boot配置的ObjectMapper一样注册ParameterNamesModule（UserBatch只能通过构造器创建）：
+ * users为1时是单个查询的CommonResult<User>，大于1时是批量查询的CommonResult<UserBatch>
+ * 每组参数的编码字节数在Setup中输出（bytes=），耗时为ns/op
+ * mvn -Pbenchmark test-compile exec:exec -Dbenchmark.args="Serialization"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 10, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+
+    private static final TypeReference<CommonResult<User>> USER_TYPE = new TypeReference<CommonResult<User>>() {
+    };
+
+    private static final TypeReference<CommonResult<UserBatch>> BATCH_TYPE = new TypeReference<CommonResult<UserBatch>>() {
+    };
+
+    @Param({"JSON", "SMILE", "CBOR"})
+    private String format;
+
+    @Param({"1", "50"})
+    private int users;
+
+    private ObjectMapper mapper;
+
+    private CommonResult<?> result;
+
+    private TypeReference<? extends CommonResult<?>> type;
+
+    private byte[] encoded;
+
+    @Setup
+    public void setup() throws IOException {
+        JsonFactory factory;
+        switch (format) {
+            case "SMILE":
+                factory = new SmileFactory();
+                break;
+            case "CBOR":
+                factory = new CBORFactory();
+                break;
+            default:
+                factory = new JsonFactory();
+        }
+        mapper = Jackson2ObjectMapperBuilder.json().factory(factory)
+                .modulesToInstall(new ParameterNamesModule()).build();
+        if (users == 1) {
+            result = new CommonResult<>(user(1L));
+            type = USER_TYPE;
+        } else {
+            List<User> batch = new ArrayList<>(users);
+            for (long id = 1; id <= users; id++) {
+                batch.add(user(id));
+            }
+            result = new CommonResult<>(new UserBatch(batch, Collections.emptyList(), Collections.emptyList()));
+            type = BATCH_TYPE;
+        }
+        encoded = mapper.writeValueAsBytes(result);
+        System.out.println("format=" + format + " users=" + users + " bytes=" + encoded.length);
+    }
+
+    @Benchmark
+    public byte[] serialize() throws IOException {
+        return mapper.writeValueAsBytes(result);
+    }
+
+    @Benchmark
+    public Object deserialize() throws IOException {
+        return mapper.readValue(encoded, type);
+    }
+
+    private static User user(Long id) {
+        return new User(id, "user" + id, "52115211", 1L);
+    }
+}
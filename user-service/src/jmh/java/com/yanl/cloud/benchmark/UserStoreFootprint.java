@@ -0,0 +1,62 @@
+package com.yanl.cloud.benchmark;
+
+import com.yanl.cloud.domain.User;
+import com.yanl.cloud.store.HeapUserStore;
+import com.yanl.cloud.store.OffHeapUserStore;
+import com.yanl.cloud.store.UserStore;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.function.Supplier;
+
+/**
+ * 测量HeapUserStore和OffHeapUserStore每个用户占用的堆内、堆外内存
+ * 用户名为"user"+id，密码为8个ASCII字符；每种存储在单独的JVM中运行结果更稳定：
+ * mvn -Pbenchmark test-compile exec:exec -Dbenchmark.main=com.yanl.cloud.benchmark.UserStoreFootprint -Dbenchmark.args="offheap 1000000"
+ * 参数：heap | offheap | offheap-unsorted，用户数（默认1000000）
+ */
+public class UserStoreFootprint {
+
+    public static void main(String[] args) {
+        String type = args.length > 0 ? args[0] : "offheap";
+        int users = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+        Supplier<UserStore> factory;
+        switch (type) {
+            case "heap":
+                factory = HeapUserStore::new;
+                break;
+            case "offheap-unsorted":
+                factory = () -> new OffHeapUserStore(users, false);
+                break;
+            default:
+                factory = () -> new OffHeapUserStore(users, true);
+        }
+        long heapBefore = usedHeap();
+        long directBefore = usedDirect();
+        UserStore store = factory.get();
+        for (long id = 1; id <= users; id++) {
+            store.insert(new User(id, "user" + id, "52115211"));
+        }
+        long heap = usedHeap() - heapBefore;
+        long direct = usedDirect() - directBefore;
+        System.out.printf("%s users=%d heap=%d B/user direct=%d B/user (store size %d)%n",
+                type, users, heap / users, direct / users, store.size());
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long usedDirect() {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if ("direct".equals(pool.getName())) {
+                return pool.getMemoryUsed();
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,139 @@
+package com.yanl.cloud.change;
+
+import com.yanl.cloud.domain.User;
+import com.yanl.cloud.domain.UserChange;
+import com.yanl.cloud.domain.UserChangePage;
+import com.yanl.cloud.domain.UserOperation;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.client.serviceregistry.Registration;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongConsumer;
+
+/**
+ * 用户变更事件流
+ * 事件保存在固定容量的环形缓冲区中，序号在本次启动（epoch）内单调递增；
+ * publish在写锁内调用，只写入缓冲区，监听器由单独的线程通知，不会阻塞写操作
+ */
+@Slf4j
+@Component
+public class UserChangeFeed {
+
+    private final String epoch = UUID.randomUUID().toString();
+
+    private final UserChange[] ring;
+
+    private final List<LongConsumer> listeners = new CopyOnWriteArrayList<>();
+
+    private final AtomicBoolean dispatchScheduled = new AtomicBoolean();
+
+    private final ExecutorService dispatcher = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "user-change-dispatcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String localOrigin;
+
+    private long lastSequence;
+
+    public UserChangeFeed(@Value("${user.change-feed.capacity:100000}") int capacity,
+                          ObjectProvider<Registration> registration) {
+        this.ring = new UserChange[capacity];
+        Registration local = registration.getIfAvailable();
+        this.localOrigin = local != null && local.getInstanceId() != null ? local.getInstanceId() : epoch;
+    }
+
+    /**
+     * 发布本实例执行的写操作
+     */
+    public void publish(UserOperation operation, User user) {
+        publish(operation, user, localOrigin);
+    }
+
+    /**
+     * 发布写操作
+     * @param origin 最初执行该写操作的实例id
+     */
+    public void publish(UserOperation operation, User user, String origin) {
+        synchronized (this) {
+            long sequence = ++lastSequence;
+            ring[(int) (sequence % ring.length)] = new UserChange(sequence, operation, user, System.currentTimeMillis(), origin);
+        }
+        // 通知任务已在排队时不再重复提交，一次通知可以覆盖多个事件
+        if (dispatchScheduled.compareAndSet(false, true)) {
+            dispatcher.execute(this::dispatch);
+        }
+    }
+
+    /**
+     * 读取指定序号之后的事件
+     * @param epoch 消费方上次读取到的epoch，为null时不校验
+     * @param after 消费方已处理的最后一个序号
+     * @param limit
+     * @return
+     */
+    public synchronized UserChangePage read(String epoch, long after, int limit) {
+        long oldest = Math.max(1, lastSequence - ring.length + 1);
+        boolean epochChanged = epoch != null && !epoch.equals(this.epoch);
+        if (epochChanged || after > lastSequence || after + 1 < oldest) {
+            return new UserChangePage(this.epoch, true, lastSequence, Collections.emptyList());
+        }
+        int count = (int) Math.min(limit, lastSequence - after);
+        List<UserChange> changes = new ArrayList<>(count);
+        for (long sequence = after + 1; sequence <= after + count; sequence++) {
+            changes.add(ring[(int) (sequence % ring.length)]);
+        }
+        return new UserChangePage(this.epoch, false, lastSequence, changes);
+    }
+
+    public String getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * 本实例的id，注册到Eureka时为Eureka的instanceId
+     */
+    public String getLocalOrigin() {
+        return localOrigin;
+    }
+
+    /**
+     * 注册监听器，有新事件时在通知线程中回调，参数为最新的序号
+     * 所有监听器共用一个通知线程，回调中不能做阻塞的IO，耗时的工作需要交给其他线程
+     */
+    public void addListener(LongConsumer listener) {
+        listeners.add(listener);
+    }
+
+    @PreDestroy
+    public void close() {
+        dispatcher.shutdownNow();
+    }
+
+    private void dispatch() {
+        dispatchScheduled.set(false);
+        long sequence;
+        synchronized (this) {
+            sequence = lastSequence;
+        }
+        for (LongConsumer listener : listeners) {
+            try {
+                listener.accept(sequence);
+            } catch (Exception e) {
+                log.error("用户变更事件通知失败", e);
+            }
+        }
+    }
+}
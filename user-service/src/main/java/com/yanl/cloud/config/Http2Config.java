@@ -0,0 +1,22 @@
+package com.yanl.cloud.config;
+
+import org.apache.coyote.http2.Http2Protocol;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 开启h2c（HTTP/2明文），server.http2.enabled只在配置了SSL时生效，内网服务之间不使用SSL，因此单独添加
+ * 同一端口同时支持HTTP/1.1，以及HTTP/2的Upgrade和直接连接（prior knowledge）两种方式，供feign-service的HTTP/2连接使用
+ */
+@Configuration
+@ConditionalOnProperty(name = "user.http2c.enabled", havingValue = "true")
+public class Http2Config {
+
+    @Bean
+    public WebServerFactoryCustomizer<TomcatServletWebServerFactory> h2cCustomizer(){
+        return factory -> factory.addConnectorCustomizers(connector -> connector.addUpgradeProtocol(new Http2Protocol()));
+    }
+}
@@ -0,0 +1,118 @@
+package com.yanl.cloud.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.yanl.cloud.domain.CommonResult;
+import com.yanl.cloud.domain.User;
+import com.yanl.cloud.domain.UserImportResult;
+import com.yanl.cloud.service.UserService;
+import com.yanl.cloud.service.impl.UserServiceImpl;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 用户批量导入导出，格式为NDJSON（每行一个User的json）
+ * 导入时边解析边按批写入，导出时边遍历边写出，内存占用与用户总量无关
+ * 导入遇到格式错误或过长的行时停止并返回400，结果中带有已导入的数量和出错的行号
+ */
+@Slf4j
+@RestController
+@RequestMapping("/user")
+public class UserBulkController {
+
+    private static final String NDJSON = "application/x-ndjson";
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${user.bulk.batch-size:1000}")
+    private int batchSize;
+
+    @PostMapping(value = "/import", consumes = {NDJSON, MediaType.TEXT_PLAIN_VALUE, MediaType.APPLICATION_OCTET_STREAM_VALUE})
+    public ResponseEntity<CommonResult<UserImportResult>> importUsers(HttpServletRequest request) throws IOException {
+        long total = 0;
+        long imported = 0;
+        List<User> batch = new ArrayList<>(batchSize);
+        // 正在解析的记录的起始行，解析失败时报告这一行而不是解析器停下的位置
+        Long line = null;
+        try (MappingIterator<User> users = objectMapper.readerFor(User.class).readValues(request.getInputStream())) {
+            while (users.hasNextValue()) {
+                line = (long) users.getCurrentLocation().getLineNr();
+                User user = users.nextValue();
+                total++;
+                if (!UserServiceImpl.isValid(user)) {
+                    imported += flush(batch);
+                    return failed(total, imported, line, "用户名或密码过长");
+                }
+                line = null;
+                batch.add(user);
+                if (batch.size() >= batchSize) {
+                    imported += flush(batch);
+                }
+            }
+        } catch (JsonProcessingException e) {
+            // 出错行之前已解析的用户照常导入，调用方根据failedLine修正后从该行继续
+            imported += flush(batch);
+            if (line == null && e.getLocation() != null) {
+                line = (long) e.getLocation().getLineNr();
+            }
+            return failed(total + 1, imported, line, "格式错误");
+        }
+        imported += flush(batch);
+        log.info("批量导入用户，读取数量：{}，导入数量：{}", total, imported);
+        return ResponseEntity.ok(new CommonResult<>(new UserImportResult(total, imported)));
+    }
+
+    private long flush(List<User> batch) {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        long imported = userService.importUsers(batch);
+        batch.clear();
+        return imported;
+    }
+
+    private ResponseEntity<CommonResult<UserImportResult>> failed(long total, long imported, Long line, String reason) {
+        log.warn("批量导入用户失败，第{}行{}，已导入数量：{}", line, reason, imported);
+        return ResponseEntity.badRequest().body(new CommonResult<>(new UserImportResult(total, imported, line),
+                "导入中断，第" + line + "行" + reason, 400));
+    }
+
+    @GetMapping(value = "/export", produces = NDJSON)
+    public ResponseEntity<StreamingResponseBody> exportUsers() {
+        StreamingResponseBody body = out -> {
+            try (SequenceWriter writer = objectMapper.writerFor(User.class).withRootValueSeparator("\n").writeValues(out)) {
+                userService.exportUsers(user -> {
+                    try {
+                        writer.write(user);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                // 分隔符只写在记录之间，补上最后一行的换行
+                writer.flush();
+                out.write('\n');
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(NDJSON)).body(body);
+    }
+}
@@ -0,0 +1,303 @@
+package com.yanl.cloud.controller;
+
+import com.yanl.cloud.change.UserChangeFeed;
+import com.yanl.cloud.domain.CommonResult;
+import com.yanl.cloud.domain.UserChange;
+import com.yanl.cloud.domain.UserChangePage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 用户变更事件订阅，支持长轮询和SSE两种方式，均可从指定序号继续消费
+ * SSE订阅者各自有一个有界缓冲区：通知线程只把事件放入缓冲区，由发送线程池写出，
+ * 缓冲区满且长时间发送不出去的订阅者由定时检查断开，不会拖慢通知线程和其他订阅者
+ */
+@Slf4j
+@RestController
+@RequestMapping("/user/changes")
+public class UserChangeController {
+
+    private static final long MAX_POLL_TIMEOUT = 60000;
+
+    private static final int MAX_LIMIT = 1000;
+
+    @Autowired
+    private UserChangeFeed userChangeFeed;
+
+    @Value("${user.change-feed.stream-timeout-ms:1800000}")
+    private long streamTimeout;
+
+    @Value("${user.change-feed.subscriber-buffer:1000}")
+    private int subscriberBuffer;
+
+    @Value("${user.change-feed.stall-timeout-ms:10000}")
+    private long stallTimeout;
+
+    @Value("${user.change-feed.sender-threads:4}")
+    private int senderThreads;
+
+    private ExecutorService sender;
+
+    private ScheduledExecutorService stallChecker;
+
+    private final Queue<PendingPoll> pendingPolls = new ConcurrentLinkedQueue<>();
+
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadId = new AtomicInteger();
+        sender = Executors.newFixedThreadPool(senderThreads, r -> {
+            Thread thread = new Thread(r, "user-change-sender-" + threadId.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // 停滞检查不依赖新事件，没有新事件时卡住的订阅者也会被断开
+        stallChecker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "user-change-stall-check");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long checkInterval = Math.max(100, stallTimeout / 2);
+        stallChecker.scheduleWithFixedDelay(() -> subscribers.forEach(Subscriber::checkStalled),
+                checkInterval, checkInterval, TimeUnit.MILLISECONDS);
+        userChangeFeed.addListener(sequence -> {
+            pendingPolls.forEach(PendingPoll::tryComplete);
+            subscribers.forEach(Subscriber::enqueue);
+        });
+    }
+
+    @PreDestroy
+    public void close() {
+        stallChecker.shutdownNow();
+        sender.shutdownNow();
+    }
+
+    /**
+     * 长轮询：有新事件时立即返回，否则挂起直到有新事件或超时（超时返回空列表）
+     * @param after 已处理的最后一个序号
+     * @param epoch 上次返回的epoch，变化时返回reset
+     * @param limit 单次最多返回的事件数
+     * @param timeout 挂起的最长时间，单位毫秒
+     * @return
+     */
+    @GetMapping
+    public DeferredResult<CommonResult<UserChangePage>> poll(@RequestParam(defaultValue = "0") long after,
+                                                             @RequestParam(required = false) String epoch,
+                                                             @RequestParam(defaultValue = "100") int limit,
+                                                             @RequestParam(defaultValue = "30000") long timeout) {
+        PendingPoll poll = new PendingPoll(epoch, after, Math.max(1, Math.min(limit, MAX_LIMIT)), Math.min(timeout, MAX_POLL_TIMEOUT));
+        if (poll.tryComplete()) {
+            return poll.result;
+        }
+        pendingPolls.add(poll);
+        poll.result.onCompletion(() -> pendingPolls.remove(poll));
+        // 注册之前发布的事件可能没有触发通知，注册后再检查一次
+        poll.tryComplete();
+        return poll.result;
+    }
+
+    /**
+     * SSE订阅，事件id为 epoch:序号，断线重连时浏览器会通过Last-Event-ID带回
+     * @param after 已处理的最后一个序号，Last-Event-ID存在且格式正确时以其为准
+     * @param epoch
+     * @param lastEventId
+     * @return
+     */
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream(@RequestParam(defaultValue = "0") long after,
+                             @RequestParam(required = false) String epoch,
+                             @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        if (lastEventId != null && lastEventId.contains(":")) {
+            int index = lastEventId.lastIndexOf(':');
+            try {
+                after = Long.parseLong(lastEventId.substring(index + 1));
+                epoch = lastEventId.substring(0, index);
+            } catch (NumberFormatException e) {
+                log.debug("忽略格式错误的Last-Event-ID: {}", lastEventId);
+            }
+        }
+        SseEmitter emitter = new SseEmitter(streamTimeout);
+        Subscriber subscriber = new Subscriber(emitter, epoch, after);
+        subscribers.add(subscriber);
+        emitter.onCompletion(subscriber::closed);
+        emitter.onTimeout(subscriber::closed);
+        emitter.onError(e -> subscriber.closed());
+        subscriber.enqueue();
+        return emitter;
+    }
+
+    private class PendingPoll {
+        private final String epoch;
+        private final long after;
+        private final int limit;
+        private final DeferredResult<CommonResult<UserChangePage>> result;
+
+        PendingPoll(String epoch, long after, int limit, long timeout) {
+            this.epoch = epoch;
+            this.after = after;
+            this.limit = limit;
+            this.result = new DeferredResult<>(timeout, () -> new CommonResult<>(userChangeFeed.read(epoch, after, limit)));
+        }
+
+        boolean tryComplete() {
+            UserChangePage page = userChangeFeed.read(epoch, after, limit);
+            if (page.isReset() || !page.getChanges().isEmpty()) {
+                return result.setResult(new CommonResult<>(page));
+            }
+            return false;
+        }
+    }
+
+    private class Subscriber {
+        private final SseEmitter emitter;
+        private final BlockingQueue<SseEmitter.SseEventBuilder> buffer;
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private final AtomicBoolean completed = new AtomicBoolean();
+        private volatile boolean closed;
+        private volatile boolean stalled;
+        private volatile boolean sending;
+        private volatile long lastProgress = System.nanoTime();
+        private String epoch;
+        private long cursor;
+
+        Subscriber(SseEmitter emitter, String epoch, long cursor) {
+            this.emitter = emitter;
+            this.buffer = new ArrayBlockingQueue<>(subscriberBuffer);
+            this.epoch = epoch;
+            this.cursor = cursor;
+        }
+
+        /**
+         * 定时检查线程调用，缓冲区已满且超过stallTimeout没有发送成功时断开
+         * 断开之后客户端从Last-Event-ID重连，落后太多时会收到reset
+         */
+        void checkStalled() {
+            if (buffer.remainingCapacity() > 0 || !draining.get()
+                    || System.nanoTime() - lastProgress <= TimeUnit.MILLISECONDS.toNanos(stallTimeout)) {
+                return;
+            }
+            log.warn("用户变更订阅者发送停滞，断开连接，已放入缓冲区：{}:{}", epoch, cursor);
+            stalled = true;
+            subscribers.remove(this);
+            buffer.clear();
+            // 发送线程阻塞在emitter.send中时持有emitter的锁，此时由发送线程在写超时（server.tomcat.connection-timeout）后结束；
+            // 发送任务还在排队时直接结束，不占用发送线程
+            if (!sending) {
+                complete();
+            }
+        }
+
+        /**
+         * 把cursor之后的事件放入缓冲区直到放满，其余事件留在环形缓冲区中，发送后再补充
+         * 请求线程、通知线程和发送线程都可能调用，需要同步
+         */
+        synchronized void enqueue() {
+            if (closed || stalled) {
+                return;
+            }
+            while (buffer.remainingCapacity() > 0) {
+                UserChangePage page = userChangeFeed.read(epoch, cursor, Math.min(MAX_LIMIT, buffer.remainingCapacity()));
+                epoch = page.getEpoch();
+                if (page.isReset()) {
+                    cursor = page.getLastSequence();
+                    buffer.offer(SseEmitter.event().name("reset").id(epoch + ":" + cursor).data(page));
+                    continue;
+                }
+                if (page.getChanges().isEmpty()) {
+                    break;
+                }
+                for (UserChange change : page.getChanges()) {
+                    buffer.offer(SseEmitter.event().name("change").id(epoch + ":" + change.getSequence()).data(change));
+                    cursor = change.getSequence();
+                }
+            }
+            schedule();
+        }
+
+        private void schedule() {
+            if (!buffer.isEmpty() && draining.compareAndSet(false, true)) {
+                lastProgress = System.nanoTime();
+                sender.execute(this::drain);
+            }
+        }
+
+        /**
+         * 在发送线程中写出缓冲区中的事件，每个订阅者同一时刻最多一个发送任务
+         */
+        private void drain() {
+            try {
+                while (!closed && !stalled) {
+                    SseEmitter.SseEventBuilder event = buffer.poll();
+                    if (event == null) {
+                        enqueue();
+                        event = buffer.poll();
+                        if (event == null) {
+                            break;
+                        }
+                    }
+                    sending = true;
+                    try {
+                        emitter.send(event);
+                    } finally {
+                        sending = false;
+                    }
+                    lastProgress = System.nanoTime();
+                }
+                if (stalled) {
+                    complete();
+                }
+            } catch (IOException | IllegalStateException e) {
+                log.debug("用户变更订阅已断开: {}", e.getMessage());
+                closed();
+                if (completed.compareAndSet(false, true)) {
+                    emitter.completeWithError(e);
+                }
+            } finally {
+                draining.set(false);
+                // 释放标记之前放入的事件可能没有触发新的发送任务
+                if (!closed && !stalled) {
+                    schedule();
+                }
+            }
+        }
+
+        private void complete() {
+            if (completed.compareAndSet(false, true)) {
+                closed();
+                emitter.complete();
+            }
+        }
+
+        void closed() {
+            closed = true;
+            subscribers.remove(this);
+            buffer.clear();
+        }
+    }
+}
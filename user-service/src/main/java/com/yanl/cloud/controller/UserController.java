@@ -2,11 +2,18 @@ package com.yanl.cloud.controller;
 
 import com.yanl.cloud.domain.CommonResult;
 import com.yanl.cloud.domain.User;
+import com.yanl.cloud.domain.UserBatch;
+import com.yanl.cloud.domain.UserPage;
+import com.yanl.cloud.domain.UserWriteResult;
 import com.yanl.cloud.service.UserService;
+import com.yanl.cloud.store.SortedIndexDisabledException;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.ArrayList;
 import java.util.List;
 
 @Slf4j
@@ -19,7 +26,13 @@ public class UserController {
 
     @PostMapping("/create")
     public CommonResult create(@RequestBody User user){
-        userService.create(user);
+        UserWriteResult result = userService.create(user);
+        if(result.getStatus() == UserWriteResult.Status.INVALID){
+            return new CommonResult("操作失败，用户名或密码过长", 400);
+        }
+        if(!result.isOk()){
+            return new CommonResult("操作失败，用户id或用户名已存在", 500);
+        }
         return new CommonResult("操作成功", 200);
     }
 
@@ -37,6 +50,18 @@ public class UserController {
         return new CommonResult<>(findUserList);
     }
 
+    /**
+     * 批量查询，id通过请求体传递，避免大量id超出查询字符串长度限制
+     * @param ids
+     * @return
+     */
+    @PostMapping("/getUserByIds")
+    public CommonResult<UserBatch> multiGet(@RequestBody List<Long> ids){
+        UserBatch batch = userService.multiGet(ids);
+        log.info("根据ids批量获取用户，请求数量：{}，未找到数量：{}", ids.size(), batch.getMissingIds().size());
+        return new CommonResult<>(batch);
+    }
+
     @GetMapping("/getUserByName")
     public CommonResult<User> getUserByName(@RequestParam String username){
         User user = userService.getByUserName(username);
@@ -44,10 +69,128 @@ public class UserController {
         return new CommonResult<>(user);
     }
 
+    /**
+     * 按id游标分页查询用户
+     * @param cursor 上一页返回的nextCursor
+     * @param limit 每页数量，最大1000
+     * @return
+     */
+    @GetMapping("/list")
+    public CommonResult<UserPage> list(@RequestParam(required = false) Long cursor,
+                                       @RequestParam(defaultValue = "20") int limit){
+        return new CommonResult<>(userService.list(cursor, limit));
+    }
+
+    /**
+     * 按用户名前缀查询用户
+     * @param prefix
+     * @param cursor 上一页返回的nextCursor
+     * @param limit 每页数量，最大1000
+     * @return
+     */
+    @GetMapping("/search")
+    public CommonResult<UserPage> search(@RequestParam String prefix,
+                                         @RequestParam(required = false) String cursor,
+                                         @RequestParam(defaultValue = "20") int limit){
+        return new CommonResult<>(userService.searchByUsernamePrefix(prefix, cursor, limit));
+    }
+
+    /**
+     * 更新用户，期望版本可以通过If-Match请求头或请求体中的version传入，都不传时不校验版本
+     * If-Match可以带多个ETag，当前版本是其中之一即可更新；格式错误时返回400，版本不匹配时返回412，
+     * If-Match使用强比较，弱ETag（W/前缀）不匹配任何版本；If-Match为*时不限制版本，但仍校验请求体中的version
+     * 请求体中的version不一致时返回409，成功时返回更新后的用户及新版本号
+     * @param user
+     * @param ifMatch
+     * @return
+     */
     @PostMapping("/update")
-    public CommonResult update(@RequestBody User user){
-        userService.update(user);
-        return new CommonResult("操作成功", 200);
+    public ResponseEntity<CommonResult<User>> update(@RequestBody User user,
+                                                     @RequestHeader(value = "If-Match", required = false) String ifMatch){
+        Long expectedVersion = user.getVersion();
+        List<Long> versions = null;
+        if (ifMatch != null) {
+            try {
+                versions = parseVersions(ifMatch);
+            } catch (NumberFormatException e) {
+                return ResponseEntity.badRequest().body(new CommonResult<>("操作失败，If-Match格式错误", 400));
+            }
+        }
+        if (versions != null) {
+            if (versions.isEmpty()) {
+                return preconditionFailed();
+            }
+            Long headerVersion = versions.get(0);
+            if ((versions.size() > 1 || (expectedVersion != null && !expectedVersion.equals(headerVersion)))
+                    && user.getId() != null) {
+                // 存储只支持比较单个版本，取当前版本作为期望值，期间被修改时仍由存储的版本比较拒绝
+                User current = userService.getUser(user.getId());
+                if (current != null) {
+                    if (!versions.contains(current.getVersion())) {
+                        return preconditionFailed();
+                    }
+                    headerVersion = current.getVersion();
+                }
+            }
+            if (expectedVersion != null && !expectedVersion.equals(headerVersion)) {
+                return versionConflict();
+            }
+            expectedVersion = headerVersion;
+        }
+        UserWriteResult result = userService.update(user, expectedVersion);
+        switch (result.getStatus()) {
+            case OK:
+                return ResponseEntity.ok()
+                        .eTag(String.valueOf(result.getUser().getVersion()))
+                        .body(new CommonResult<>(result.getUser()));
+            case VERSION_CONFLICT:
+                // 期望版本来自If-Match的ETag时返回412，来自请求体时返回409
+                if (versions != null) {
+                    return preconditionFailed();
+                }
+                return versionConflict();
+            case INVALID:
+                return ResponseEntity.badRequest().body(new CommonResult<>("操作失败，用户名或密码过长", 400));
+            default:
+                return ResponseEntity.ok(new CommonResult<>("操作失败，用户不存在或用户名已存在", 500));
+        }
+    }
+
+    private ResponseEntity<CommonResult<User>> versionConflict() {
+        return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(new CommonResult<>("操作失败，用户已被修改，请重新获取后再更新", 409));
+    }
+
+    private ResponseEntity<CommonResult<User>> preconditionFailed() {
+        return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED)
+                .body(new CommonResult<>("操作失败，用户已被修改，请重新获取后再更新", 412));
+    }
+
+    /**
+     * 解析If-Match中逗号分隔的ETag列表，If-Match使用强比较，弱ETag只校验格式，不放入结果
+     * @return 包含*时返回null，表示不限制版本；只有弱ETag时返回空列表
+     * @throws NumberFormatException ETag不是版本号
+     */
+    private List<Long> parseVersions(String ifMatch) {
+        List<Long> versions = new ArrayList<>();
+        for (String tag : ifMatch.split(",")) {
+            String version = tag.trim();
+            if ("*".equals(version)) {
+                return null;
+            }
+            boolean weak = version.startsWith("W/");
+            if (weak) {
+                version = version.substring(2);
+            }
+            if (version.length() >= 2 && version.startsWith("\"") && version.endsWith("\"")) {
+                version = version.substring(1, version.length() - 1);
+            }
+            Long parsed = Long.valueOf(version);
+            if (!weak) {
+                versions.add(parsed);
+            }
+        }
+        return versions;
     }
 
     @PostMapping("/delete/{id}")
@@ -56,4 +199,13 @@ public class UserController {
         return new CommonResult("操作成功", 200);
     }
 
+    /**
+     * offheap存储关闭有序索引（user.store.sorted-index=false）时不支持分页和前缀查询
+     */
+    @ExceptionHandler(SortedIndexDisabledException.class)
+    public ResponseEntity<CommonResult> sortedIndexDisabled(){
+        return ResponseEntity.status(HttpStatus.NOT_IMPLEMENTED)
+                .body(new CommonResult("操作失败，未开启有序索引，不支持分页和前缀查询", 501));
+    }
+
 }
@@ -0,0 +1,30 @@
+package com.yanl.cloud.controller;
+
+import com.yanl.cloud.domain.CommonResult;
+import com.yanl.cloud.domain.ReplicationStatus;
+import com.yanl.cloud.replication.UserReplicator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/user/replication")
+@ConditionalOnProperty(name = "user.replication.enabled", havingValue = "true")
+public class UserReplicationController {
+
+    @Autowired
+    private UserReplicator userReplicator;
+
+    /**
+     * 查看与各对端实例的复制状态
+     * @return
+     */
+    @GetMapping("/status")
+    public CommonResult<List<ReplicationStatus>> status(){
+        return new CommonResult<>(userReplicator.status());
+    }
+}
@@ -0,0 +1,95 @@
+package com.yanl.cloud.controller;
+
+import com.yanl.cloud.domain.CommonResult;
+import com.yanl.cloud.domain.User;
+import com.yanl.cloud.domain.UserBatch;
+import com.yanl.cloud.domain.UserPage;
+import com.yanl.cloud.domain.UserWriteResult;
+import com.yanl.cloud.service.UserService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 分片之间调用的内部接口，只访问本实例的数据，不再转发
+ */
+@RestController
+@RequestMapping("/user/shard")
+@ConditionalOnProperty(name = "user.shard.enabled", havingValue = "true")
+public class UserShardController {
+
+    @Autowired
+    @Qualifier("userServiceImpl")
+    private UserService localUserService;
+
+    @PostMapping("/create")
+    public CommonResult<UserWriteResult> create(@RequestBody User user){
+        return new CommonResult<>(localUserService.create(user));
+    }
+
+    @GetMapping("/{id}")
+    public CommonResult<User> getUser(@PathVariable Long id){
+        return new CommonResult<>(localUserService.getUser(id));
+    }
+
+    @PostMapping("/update")
+    public CommonResult<UserWriteResult> update(@RequestBody User user,
+                                                @RequestParam(required = false) Long expectedVersion){
+        return new CommonResult<>(localUserService.update(user, expectedVersion));
+    }
+
+    @PostMapping("/delete/{id}")
+    public CommonResult<UserWriteResult> delete(@PathVariable Long id){
+        return new CommonResult<>(localUserService.delete(id));
+    }
+
+    @GetMapping("/getUserByName")
+    public CommonResult<User> getUserByName(@RequestParam String username){
+        return new CommonResult<>(localUserService.getByUserName(username));
+    }
+
+    @PostMapping("/getUserByIds")
+    public CommonResult<UserBatch> multiGet(@RequestBody List<Long> ids){
+        return new CommonResult<>(localUserService.multiGet(ids));
+    }
+
+    @GetMapping("/list")
+    public CommonResult<UserPage> list(@RequestParam(required = false) Long cursor, @RequestParam int limit){
+        return new CommonResult<>(localUserService.list(cursor, limit));
+    }
+
+    @GetMapping("/search")
+    public CommonResult<UserPage> search(@RequestParam String prefix,
+                                         @RequestParam(required = false) String cursor,
+                                         @RequestParam int limit){
+        return new CommonResult<>(localUserService.searchByUsernamePrefix(prefix, cursor, limit));
+    }
+
+    @PostMapping("/import")
+    public CommonResult<Integer> importUsers(@RequestBody List<User> users){
+        return new CommonResult<>(localUserService.importUsers(users));
+    }
+
+    /**
+     * 接收其他分片迁移过来的用户，保留原版本号
+     * @param origin 迁出的实例id
+     * @param users
+     * @return 已保存的用户id（本地版本不低于迁移过来的版本），迁出方只删除这些用户
+     */
+    @PostMapping("/handoff")
+    public CommonResult<List<Long>> handoff(@RequestParam String origin, @RequestBody List<User> users){
+        localUserService.replicateAll(origin, users);
+        List<Long> accepted = new ArrayList<>(users.size());
+        for (User user : users) {
+            User local = localUserService.getUser(user.getId());
+            if (local != null && local.getVersion() >= user.getVersion()) {
+                accepted.add(user.getId());
+            }
+        }
+        return new CommonResult<>(accepted);
+    }
+}
@@ -0,0 +1,21 @@
+package com.yanl.cloud.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 与某个对端实例的复制状态
+ * appliedSequence为已处理的对端事件序号，peerSequence为对端最新序号，
+ * lagMillis为距上次与对端同步成功的时间，超过user.replication.stale-threshold-ms时stale为true，只用于监控和告警
+ */
+@Data
+@AllArgsConstructor
+public class ReplicationStatus {
+    private String peer;
+    private String uri;
+    private String epoch;
+    private long appliedSequence;
+    private long peerSequence;
+    private long lagMillis;
+    private boolean stale;
+}
@@ -2,11 +2,21 @@ package com.yanl.cloud.domain;
 
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 
 @Data
+@NoArgsConstructor
 @AllArgsConstructor
 public class User {
     private Long id;
     private String username;
     private String password;
+    /**
+     * 版本号，每次更新加1；更新时传入则作为期望版本进行乐观锁校验
+     */
+    private Long version;
+
+    public User(Long id, String username, String password) {
+        this(id, username, password, null);
+    }
 }
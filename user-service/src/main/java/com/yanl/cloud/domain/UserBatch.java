@@ -0,0 +1,18 @@
+package com.yanl.cloud.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 批量查询结果，users按请求id的顺序排列，missingIds为未找到的id，
+ * unavailableIds为所在分片查询失败的id（不代表不存在，可以重试）
+ */
+@Data
+@AllArgsConstructor
+public class UserBatch {
+    private List<User> users;
+    private List<Long> missingIds;
+    private List<Long> unavailableIds;
+}
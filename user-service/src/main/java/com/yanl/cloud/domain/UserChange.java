@@ -0,0 +1,20 @@
+package com.yanl.cloud.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 用户变更事件，sequence在同一epoch内单调递增，删除事件的user为被删除的用户
+ * origin为最初执行该写操作的实例id，复制过来的写操作保留原实例id
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserChange {
+    private Long sequence;
+    private UserOperation operation;
+    private User user;
+    private Long timestamp;
+    private String origin;
+}
@@ -0,0 +1,22 @@
+package com.yanl.cloud.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 变更事件拉取结果
+ * reset为true表示请求的序号已不在缓冲区内或epoch已变化（服务重启），
+ * 消费方需要通过/user/export全量同步，再从lastSequence继续拉取
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserChangePage {
+    private String epoch;
+    private boolean reset;
+    private long lastSequence;
+    private List<UserChange> changes;
+}
@@ -0,0 +1,20 @@
+package com.yanl.cloud.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 批量导入结果，total为读取的行数，imported为实际导入的数量
+ * 导入中途失败时，failedLine为出错的行号，之前的批次已经提交，重新导入时已存在的用户会被跳过
+ */
+@Data
+@AllArgsConstructor
+public class UserImportResult {
+    private long total;
+    private long imported;
+    private Long failedLine;
+
+    public UserImportResult(long total, long imported) {
+        this(total, imported, null);
+    }
+}
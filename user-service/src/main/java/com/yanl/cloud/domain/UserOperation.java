@@ -0,0 +1,10 @@
+package com.yanl.cloud.domain;
+
+/**
+ * 用户写操作类型
+ */
+public enum UserOperation {
+    CREATE,
+    UPDATE,
+    DELETE
+}
@@ -0,0 +1,18 @@
+package com.yanl.cloud.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 分页结果，nextCursor作为下一页请求的cursor参数，为null时表示没有下一页
+ * partial为true时有分片查询失败，本页缺少这些分片的用户
+ */
+@Data
+@AllArgsConstructor
+public class UserPage {
+    private List<User> users;
+    private String nextCursor;
+    private boolean partial;
+}
@@ -0,0 +1,51 @@
+package com.yanl.cloud.domain;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Getter;
+
+/**
+ * 写操作结果，成功时user为写入后的用户（删除时为被删除的用户）
+ */
+@Getter
+public class UserWriteResult {
+
+    public enum Status {
+        OK,
+        NOT_FOUND,
+        /**
+         * id或用户名已被占用
+         */
+        DUPLICATE,
+        /**
+         * 期望版本与当前版本不一致
+         */
+        VERSION_CONFLICT,
+        /**
+         * 用户名或密码超过长度限制
+         */
+        INVALID
+    }
+
+    private final Status status;
+
+    private final User user;
+
+    @JsonCreator
+    private UserWriteResult(@JsonProperty("status") Status status, @JsonProperty("user") User user) {
+        this.status = status;
+        this.user = user;
+    }
+
+    public static UserWriteResult ok(User user) {
+        return new UserWriteResult(Status.OK, user);
+    }
+
+    public static UserWriteResult of(Status status) {
+        return new UserWriteResult(status, null);
+    }
+
+    public boolean isOk() {
+        return status == Status.OK;
+    }
+}
@@ -0,0 +1,193 @@
+package com.yanl.cloud.persistence;
+
+import com.yanl.cloud.domain.User;
+import com.yanl.cloud.domain.UserOperation;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 预写日志，按段写入 wal-{segment}.log
+ * append只把记录写入内存缓冲区，由flusher线程批量写盘并fsync（组提交），
+ * 一次fsync期间到达的写操作会合并到下一次fsync中
+ */
+@Slf4j
+class UserJournal implements Closeable {
+
+    private final Path dir;
+
+    private final Object lock = new Object();
+
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream(64 * 1024);
+
+    private final Thread flusher;
+
+    private long appended;
+
+    private long durable;
+
+    private long segment;
+
+    private boolean rotateRequested;
+
+    private boolean running = true;
+
+    private IOException failure;
+
+    private FileChannel channel;
+
+    UserJournal(Path dir, long segment) throws IOException {
+        this.dir = dir;
+        this.segment = segment;
+        this.channel = open(segment);
+        this.flusher = new Thread(this::flushLoop, "user-journal-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    static Path segmentPath(Path dir, long segment) {
+        return dir.resolve(String.format("wal-%020d.log", segment));
+    }
+
+    /**
+     * 写盘失败后抛出异常，调用方在修改存储之前检查
+     */
+    void checkAvailable() {
+        synchronized (lock) {
+            checkFailure();
+        }
+    }
+
+    /**
+     * 追加一条记录到缓冲区，不检查写盘失败：调用方已通过checkAvailable检查并修改了存储，
+     * 之后发生的失败由awaitDurable报告
+     * @return 该记录的序号，用于awaitDurable
+     */
+    long append(UserOperation operation, User user) {
+        synchronized (lock) {
+            try {
+                UserRecords.write(pending, operation, user);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            lock.notifyAll();
+            return ++appended;
+        }
+    }
+
+    /**
+     * 等待指定序号之前的记录全部落盘
+     */
+    void awaitDurable(long ticket) {
+        synchronized (lock) {
+            while (durable < ticket) {
+                checkFailure();
+                waitOnLock();
+            }
+        }
+    }
+
+    /**
+     * 把当前缓冲区写入旧段后切换到新段，调用方需保证期间没有新的append
+     * @return 新段的编号
+     */
+    long rotate() {
+        synchronized (lock) {
+            rotateRequested = true;
+            lock.notifyAll();
+            while (rotateRequested) {
+                checkFailure();
+                waitOnLock();
+            }
+            return segment;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            running = false;
+            lock.notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+    }
+
+    private void flushLoop() {
+        while (true) {
+            byte[] batch;
+            long target;
+            boolean rotate;
+            synchronized (lock) {
+                while (running && pending.size() == 0 && !rotateRequested) {
+                    waitOnLock();
+                }
+                if (!running && pending.size() == 0 && !rotateRequested) {
+                    return;
+                }
+                batch = pending.toByteArray();
+                pending.reset();
+                target = appended;
+                rotate = rotateRequested;
+            }
+            long next = segment + 1;
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(batch);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+                if (rotate) {
+                    channel.close();
+                    channel = open(next);
+                }
+            } catch (IOException e) {
+                log.error("写入用户日志失败", e);
+                synchronized (lock) {
+                    failure = e;
+                    lock.notifyAll();
+                }
+                return;
+            }
+            synchronized (lock) {
+                durable = target;
+                if (rotate) {
+                    segment = next;
+                    rotateRequested = false;
+                }
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private FileChannel open(long segment) throws IOException {
+        return FileChannel.open(segmentPath(dir, segment),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private void checkFailure() {
+        if (failure != null) {
+            throw new IllegalStateException("user journal is unavailable", failure);
+        }
+    }
+
+    private void waitOnLock() {
+        try {
+            lock.wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for user journal", e);
+        }
+    }
+}
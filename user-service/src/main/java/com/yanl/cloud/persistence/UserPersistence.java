@@ -0,0 +1,307 @@
+package com.yanl.cloud.persistence;
+
+import com.yanl.cloud.change.UserChangeFeed;
+import com.yanl.cloud.domain.User;
+import com.yanl.cloud.domain.UserOperation;
+import com.yanl.cloud.domain.UserWriteResult;
+import com.yanl.cloud.store.UserStore;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 用户数据持久化，通过 user.persistence.enabled=true 启用
+ *
+ * 所有写操作经过commit串行执行：先确认日志可用，再修改存储、追加预写日志、发布变更事件，释放锁后等待日志落盘。
+ * 日志写盘失败后拒绝之后的所有写操作，不修改存储也不发布事件，避免内存中的数据与日志不一致；
+ * 追加只写入内存缓冲区，在修改存储之后不会失败。变更事件在锁内发布，因此事件顺序与写入顺序一致。
+ * 定期生成快照：在写锁内切换日志段，然后在锁外遍历存储写出快照，完成后删除旧的日志段。
+ * 快照遍历期间存储仍在变化，但之后的写操作都在新日志段中，且回放是按记录中的版本号幂等覆盖写，最终状态一致。
+ * 启动时通过内存映射加载快照，再回放快照之后的日志段。
+ */
+@Slf4j
+@Component
+public class UserPersistence {
+
+    private static final String SNAPSHOT = "snapshot.dat";
+
+    private static final int SNAPSHOT_MAGIC = 0x55534E50;
+
+    private final Object writeLock = new Object();
+
+    private final Object snapshotLock = new Object();
+
+    @Autowired
+    private UserStore userStore;
+
+    @Autowired
+    private UserChangeFeed userChangeFeed;
+
+    @Value("${user.persistence.enabled:false}")
+    private boolean enabled;
+
+    @Value("${user.persistence.dir:./data/user-service}")
+    private String dir;
+
+    @Value("${user.persistence.snapshot-interval-seconds:300}")
+    private long snapshotIntervalSeconds;
+
+    private Path dataDir;
+
+    private UserJournal journal;
+
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * 执行一次写操作，写入失败时不记录日志
+     * @param operation
+     * @param apply 对存储的实际修改，成功时结果中的用户会写入日志
+     * @return apply的结果
+     */
+    public UserWriteResult commit(UserOperation operation, Supplier<UserWriteResult> apply) {
+        return commit(null, operation, apply);
+    }
+
+    /**
+     * 执行一次写操作
+     * @param origin 最初执行该写操作的实例id，为null时表示本实例
+     * @param operation
+     * @param apply
+     * @return
+     */
+    public UserWriteResult commit(String origin, UserOperation operation, Supplier<UserWriteResult> apply) {
+        long ticket;
+        UserJournal current;
+        UserWriteResult result;
+        synchronized (writeLock) {
+            current = journal;
+            if (current != null) {
+                current.checkAvailable();
+            }
+            result = apply.get();
+            if (!result.isOk()) {
+                return result;
+            }
+            if (current == null) {
+                publish(origin, operation, result.getUser());
+                return result;
+            }
+            ticket = current.append(operation, result.getUser());
+            publish(origin, operation, result.getUser());
+        }
+        current.awaitDurable(ticket);
+        return result;
+    }
+
+    /**
+     * 批量写操作，整批只等待一次落盘
+     * @param operation
+     * @param apply 对存储的实际修改，返回修改成功的用户
+     * @return apply的结果
+     */
+    public List<User> commitAll(UserOperation operation, Supplier<List<User>> apply) {
+        return commitAll(null, operation, apply);
+    }
+
+    public List<User> commitAll(String origin, UserOperation operation, Supplier<List<User>> apply) {
+        List<User> applied;
+        long ticket = 0;
+        UserJournal current;
+        synchronized (writeLock) {
+            current = journal;
+            if (current != null) {
+                current.checkAvailable();
+            }
+            applied = apply.get();
+            if (current != null) {
+                for (User user : applied) {
+                    ticket = current.append(operation, user);
+                }
+            }
+            for (User user : applied) {
+                publish(origin, operation, user);
+            }
+        }
+        if (current != null && !applied.isEmpty()) {
+            current.awaitDurable(ticket);
+        }
+        return applied;
+    }
+
+    private void publish(String origin, UserOperation operation, User user) {
+        if (origin == null) {
+            userChangeFeed.publish(operation, user);
+        } else {
+            userChangeFeed.publish(operation, user, origin);
+        }
+    }
+
+    @PostConstruct
+    public void recover() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        dataDir = Paths.get(dir);
+        Files.createDirectories(dataDir);
+        long start = System.currentTimeMillis();
+        long segment = loadSnapshot();
+        List<Long> segments = listSegments().stream().filter(s -> s >= segment).collect(Collectors.toList());
+        for (Long s : segments) {
+            replay(UserJournal.segmentPath(dataDir, s));
+        }
+        long next = segments.isEmpty() ? segment : segments.get(segments.size() - 1) + 1;
+        journal = new UserJournal(dataDir, next);
+        log.info("用户数据恢复完成，用户数量：{}，回放日志段：{}，耗时：{}ms", userStore.size(), segments.size(), System.currentTimeMillis() - start);
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "user-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::scheduledSnapshot, snapshotIntervalSeconds, snapshotIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 生成快照并删除快照之前的日志段
+     */
+    public void snapshot() throws IOException {
+        if (journal == null) {
+            return;
+        }
+        synchronized (snapshotLock) {
+            long segment;
+            synchronized (writeLock) {
+                segment = journal.rotate();
+            }
+            Path tmp = dataDir.resolve(SNAPSHOT + ".tmp");
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp), 64 * 1024)) {
+                DataOutputStream header = new DataOutputStream(out);
+                header.writeInt(SNAPSHOT_MAGIC);
+                header.writeLong(segment);
+                userStore.forEach(user -> {
+                    try {
+                        UserRecords.write(out, UserOperation.CREATE, user);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                UserRecords.writeEnd(out);
+            }
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            Files.move(tmp, dataDir.resolve(SNAPSHOT), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            for (Long s : listSegments()) {
+                if (s < segment) {
+                    Files.deleteIfExists(UserJournal.segmentPath(dataDir, s));
+                }
+            }
+            log.info("用户快照生成完成，日志段：{}", segment);
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        if (journal == null) {
+            return;
+        }
+        scheduler.shutdownNow();
+        snapshot();
+        UserJournal current;
+        synchronized (writeLock) {
+            current = journal;
+            journal = null;
+        }
+        current.close();
+    }
+
+    private void scheduledSnapshot() {
+        try {
+            snapshot();
+        } catch (Exception e) {
+            log.error("生成用户快照失败", e);
+        }
+    }
+
+    /**
+     * @return 快照对应的日志段编号，之后的日志段需要回放
+     */
+    private long loadSnapshot() {
+        Path file = dataDir.resolve(SNAPSHOT);
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        long segment;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, 12);
+            if (header.getInt() != SNAPSHOT_MAGIC) {
+                throw new IllegalStateException("invalid user snapshot: " + file);
+            }
+            segment = header.getLong();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        long end = UserRecords.read(file, 12, record -> userStore.restore(record.user));
+        if (end != -1) {
+            throw new IllegalStateException("incomplete user snapshot: " + file);
+        }
+        return segment;
+    }
+
+    private void replay(Path file) throws IOException {
+        long end = UserRecords.read(file, 0, record -> {
+            User user = record.user;
+            switch (record.operation) {
+                case CREATE:
+                case UPDATE:
+                    if (!userStore.restore(user)) {
+                        log.warn("回放用户日志冲突，id：{}，用户名：{}", user.getId(), user.getUsername());
+                    }
+                    break;
+                case DELETE:
+                    userStore.remove(user.getId());
+                    break;
+                default:
+                    break;
+            }
+        });
+        if (end >= 0 && end < Files.size(file)) {
+            log.warn("用户日志 {} 尾部不完整，从 {} 处截断", file, end);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(end);
+            }
+        }
+    }
+
+    private List<Long> listSegments() throws IOException {
+        try (Stream<Path> files = Files.list(dataDir)) {
+            return files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith("wal-") && name.endsWith(".log"))
+                    .map(name -> Long.parseLong(name.substring(4, name.length() - 4)))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+}
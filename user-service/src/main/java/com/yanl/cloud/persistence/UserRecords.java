@@ -0,0 +1,144 @@
+package com.yanl.cloud.persistence;
+
+import com.yanl.cloud.domain.User;
+import com.yanl.cloud.domain.UserOperation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * 日志和快照共用的记录格式：[int 长度][int crc32][内容]，长度为0表示结束
+ * 内容为 [byte 操作类型][long id][long 版本号][short 用户名长度][用户名][short 密码长度][密码]，字符串长度为-1表示null
+ * 字符串的UTF-8字节数不能超过Short.MAX_VALUE，由UserServiceImpl在写入存储之前校验
+ */
+final class UserRecords {
+
+    /**
+     * 单次映射的最大窗口，超出后从当前记录位置重新映射
+     */
+    private static final long MAP_WINDOW = 256L * 1024 * 1024;
+
+    private UserRecords() {
+    }
+
+    static void write(OutputStream out, UserOperation operation, User user) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(64);
+        DataOutputStream data = new DataOutputStream(payload);
+        data.writeByte(operation.ordinal());
+        data.writeLong(user.getId());
+        data.writeLong(user.getVersion() == null ? 0 : user.getVersion());
+        writeString(data, user.getUsername());
+        writeString(data, user.getPassword());
+        byte[] bytes = payload.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        DataOutputStream header = new DataOutputStream(out);
+        header.writeInt(bytes.length);
+        header.writeInt((int) crc.getValue());
+        out.write(bytes);
+    }
+
+    static void writeEnd(OutputStream out) throws IOException {
+        new DataOutputStream(out).writeInt(0);
+    }
+
+    /**
+     * 通过内存映射顺序读取文件中的记录
+     * @param file
+     * @param start 开始读取的位置
+     * @param consumer
+     * @return 最后一条完整记录之后的位置；读到结束标记时返回-1
+     */
+    static long read(Path file, long start, Consumer<Record> consumer) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = start;
+            CRC32 crc = new CRC32();
+            while (position < size) {
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_WINDOW, size - position));
+                int consumed = 0;
+                while (window.remaining() >= 4) {
+                    int length = window.getInt(consumed);
+                    if (length == 0) {
+                        return -1;
+                    }
+                    if (length < 0 || window.remaining() < 8 + length) {
+                        break;
+                    }
+                    ByteBuffer payload = window.duplicate();
+                    payload.position(consumed + 8).limit(consumed + 8 + length);
+                    crc.reset();
+                    crc.update(payload.duplicate());
+                    if ((int) crc.getValue() != window.getInt(consumed + 4)) {
+                        return position + consumed;
+                    }
+                    consumer.accept(decode(payload));
+                    consumed += 8 + length;
+                    window.position(consumed);
+                }
+                if (consumed == 0) {
+                    // 剩余部分不足一条完整记录，是未写完的尾部
+                    return position;
+                }
+                position += consumed;
+            }
+            return position;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Record decode(ByteBuffer payload) {
+        UserOperation operation = UserOperation.values()[payload.get()];
+        long id = payload.getLong();
+        long version = payload.getLong();
+        String username = readString(payload);
+        String password = readString(payload);
+        return new Record(operation, new User(id, username, password, version));
+    }
+
+    private static void writeString(DataOutputStream data, String value) throws IOException {
+        if (value == null) {
+            data.writeShort(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > Short.MAX_VALUE) {
+            // 长度写成short会溢出，回放时整条日志无法解析
+            throw new IllegalArgumentException("string too long for user record: " + bytes.length + " bytes");
+        }
+        data.writeShort(bytes.length);
+        data.write(bytes);
+    }
+
+    private static String readString(ByteBuffer payload) {
+        int length = payload.getShort();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        payload.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static final class Record {
+        final UserOperation operation;
+        final User user;
+
+        Record(UserOperation operation, User user) {
+            this.operation = operation;
+            this.user = user;
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package com.yanl.cloud.replication;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yanl.cloud.change.UserChangeFeed;
+import com.yanl.cloud.domain.CommonResult;
+import com.yanl.cloud.domain.ReplicationStatus;
+import com.yanl.cloud.domain.User;
+import com.yanl.cloud.domain.UserChange;
+import com.yanl.cloud.domain.UserChangePage;
+import com.yanl.cloud.service.UserService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 实例间的用户数据复制，通过 user.replication.enabled=true 启用
+ *
+ * 定期从Eureka获取同名服务的其他实例，每个对端一个线程，通过对端的 /user/changes 长轮询按批拉取变更事件，
+ * 只应用origin为该对端的事件（其他实例的事件由各自的复制线程拉取），写入本地时同样记录日志和发布事件。
+ * 首次连接或对端重启（epoch变化）、落后太多时，先记录对端当前序号，再通过 /user/export 全量同步，之后从该序号继续拉取。
+ * 读请求直接读本地数据，复制是异步的，不保证读到的数据落后多少：对端不可达时本地数据会一直停留在最后一次同步的状态，
+ * 可通过 /user/replication/status 查看各对端的延迟，超过 user.replication.stale-threshold-ms 时标记为stale。
+ * 冲突按版本号处理，见 UserService.replicate；全量同步不包含删除，离线期间对端删除的用户不会被同步删除。
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "user.replication.enabled", havingValue = "true")
+public class UserReplicator {
+
+    private static final ParameterizedTypeReference<CommonResult<UserChangePage>> PAGE_TYPE =
+            new ParameterizedTypeReference<CommonResult<UserChangePage>>() {
+            };
+
+    @Autowired
+    private DiscoveryClient discoveryClient;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private UserChangeFeed userChangeFeed;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${spring.application.name}")
+    private String serviceId;
+
+    @Value("${user.replication.batch-size:500}")
+    private int batchSize;
+
+    @Value("${user.replication.poll-timeout-ms:10000}")
+    private long pollTimeout;
+
+    @Value("${user.replication.stale-threshold-ms:15000}")
+    private long staleThreshold;
+
+    @Value("${user.replication.discovery-interval-seconds:30}")
+    private long discoveryInterval;
+
+    private final Map<String, Peer> peers = new ConcurrentHashMap<>();
+
+    private RestTemplate restTemplate;
+
+    private ScheduledExecutorService scheduler;
+
+    private ExecutorService workers;
+
+    @PostConstruct
+    public void start() {
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(2000);
+        requestFactory.setReadTimeout((int) pollTimeout + 5000);
+        restTemplate = new RestTemplate(requestFactory);
+        // Eureka依赖引入了jackson-dataformat-xml，默认会协商为XML，这里只使用JSON
+        restTemplate.setMessageConverters(Collections.singletonList(new MappingJackson2HttpMessageConverter(objectMapper)));
+        workers = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "user-replicator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "user-replicator-discovery");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::refreshPeers, 0, discoveryInterval, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+        peers.values().forEach(peer -> peer.running = false);
+        workers.shutdownNow();
+    }
+
+    public List<ReplicationStatus> status() {
+        long now = System.currentTimeMillis();
+        List<ReplicationStatus> status = new ArrayList<>(peers.size());
+        for (Peer peer : peers.values()) {
+            long lag = peer.lastSyncTime == 0 ? -1 : now - peer.lastSyncTime;
+            status.add(new ReplicationStatus(peer.id, peer.uri, peer.epoch, peer.cursor, peer.peerSequence,
+                    lag, lag < 0 || lag > staleThreshold));
+        }
+        return status;
+    }
+
+    private void refreshPeers() {
+        try {
+            List<ServiceInstance> instances = discoveryClient.getInstances(serviceId);
+            Set<String> current = instances.stream()
+                    .map(ServiceInstance::getInstanceId)
+                    .filter(id -> id != null && !id.equals(userChangeFeed.getLocalOrigin()))
+                    .collect(Collectors.toSet());
+            for (ServiceInstance instance : instances) {
+                String id = instance.getInstanceId();
+                if (current.contains(id) && !peers.containsKey(id)) {
+                    Peer peer = new Peer(id, instance.getUri().toString());
+                    peers.put(id, peer);
+                    workers.execute(peer);
+                    log.info("开始从实例 {}({}) 复制用户数据", id, peer.uri);
+                }
+            }
+            peers.values().removeIf(peer -> {
+                if (current.contains(peer.id)) {
+                    return false;
+                }
+                peer.running = false;
+                log.info("实例 {} 已下线，停止复制", peer.id);
+                return true;
+            });
+        } catch (Exception e) {
+            log.error("刷新复制对端失败", e);
+        }
+    }
+
+    private class Peer implements Runnable {
+        private final String id;
+        private final String uri;
+        /**
+         * 初始为空字符串，与对端epoch一定不同，首次拉取会触发全量同步
+         */
+        private volatile String epoch = "";
+        private volatile long cursor;
+        private volatile long peerSequence;
+        private volatile long lastSyncTime;
+        private volatile boolean running = true;
+
+        Peer(String id, String uri) {
+            this.id = id;
+            this.uri = uri;
+        }
+
+        @Override
+        public void run() {
+            long backoff = 500;
+            while (running && !Thread.currentThread().isInterrupted()) {
+                try {
+                    pull();
+                    backoff = 500;
+                } catch (Exception e) {
+                    log.warn("从实例 {} 复制用户数据失败: {}", id, e.toString());
+                    sleep(backoff);
+                    backoff = Math.min(backoff * 2, 30000);
+                }
+            }
+        }
+
+        private void pull() {
+            CommonResult<UserChangePage> result = restTemplate.exchange(
+                    uri + "/user/changes?after={after}&epoch={epoch}&limit={limit}&timeout={timeout}",
+                    HttpMethod.GET, null, PAGE_TYPE, cursor, epoch, batchSize, pollTimeout).getBody();
+            UserChangePage page = result.getData();
+            if (page.isReset()) {
+                fullSync(page);
+            } else {
+                for (UserChange change : page.getChanges()) {
+                    if (id.equals(change.getOrigin())) {
+                        userService.replicate(id, change.getOperation(), change.getUser());
+                    }
+                    cursor = change.getSequence();
+                }
+            }
+            peerSequence = page.getLastSequence();
+            lastSyncTime = System.currentTimeMillis();
+        }
+
+        /**
+         * 对端的lastSequence在导出之前已经确定，导出期间的写操作会在之后的增量拉取中再次应用，按版本号幂等
+         */
+        private void fullSync(UserChangePage page) {
+            long start = System.currentTimeMillis();
+            int applied = restTemplate.execute(uri + "/user/export", HttpMethod.GET, null, response -> {
+                int count = 0;
+                List<User> batch = new ArrayList<>(batchSize);
+                try (MappingIterator<User> users = objectMapper.readerFor(User.class).readValues(response.getBody())) {
+                    while (users.hasNextValue()) {
+                        batch.add(users.nextValue());
+                        if (batch.size() >= batchSize) {
+                            count += userService.replicateAll(id, batch);
+                            batch.clear();
+                        }
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    count += userService.replicateAll(id, batch);
+                }
+                return count;
+            });
+            epoch = page.getEpoch();
+            cursor = page.getLastSequence();
+            log.info("从实例 {} 全量同步完成，写入用户数：{}，耗时：{}ms", id, applied, System.currentTimeMillis() - start);
+        }
+
+        private void sleep(long millis) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -1,19 +1,75 @@
 package com.yanl.cloud.service;
 
 import com.yanl.cloud.domain.User;
+import com.yanl.cloud.domain.UserBatch;
+import com.yanl.cloud.domain.UserOperation;
+import com.yanl.cloud.domain.UserPage;
+import com.yanl.cloud.domain.UserWriteResult;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface UserService {
-    void create(User user);
+    UserWriteResult create(User user);
 
     User getUser(Long id);
 
-    void update(User user);
+    /**
+     * 更新用户
+     * @param user
+     * @param expectedVersion 期望的当前版本，为null时不校验
+     * @return
+     */
+    UserWriteResult update(User user, Long expectedVersion);
 
-    void delete(Long id);
+    UserWriteResult delete(Long id);
 
     User getByUserName(String username);
 
     List<User> getUserByIds(List<Long> ids);
+
+    UserBatch multiGet(List<Long> ids);
+
+    /**
+     * 按id升序分页
+     * @param cursor 上一页返回的nextCursor，为null时从第一页开始
+     * @param limit
+     * @return
+     */
+    UserPage list(Long cursor, int limit);
+
+    /**
+     * 按用户名前缀查询，结果按用户名升序分页
+     * @param prefix
+     * @param cursor 上一页返回的nextCursor，为null时从第一页开始
+     * @param limit
+     * @return
+     */
+    UserPage searchByUsernamePrefix(String prefix, String cursor, int limit);
+
+    /**
+     * 批量导入，已存在的id或用户名会被跳过
+     * @param users
+     * @return 导入成功的数量
+     */
+    int importUsers(List<User> users);
+
+    void exportUsers(Consumer<User> action);
+
+    /**
+     * 应用其他实例复制过来的写操作，按版本号取较新的一方（版本相同时按内容确定性地选择），保证各实例最终一致
+     * @param origin 最初执行该写操作的实例id
+     * @param operation
+     * @param user 写操作之后的用户，删除时为被删除的用户
+     * @return 本地已是相同或更新的版本时返回VERSION_CONFLICT，缺少id、版本号或用户名时返回INVALID
+     */
+    UserWriteResult replicate(String origin, UserOperation operation, User user);
+
+    /**
+     * 批量应用其他实例的用户数据，用于全量同步
+     * @param origin
+     * @param users
+     * @return 实际写入的数量
+     */
+    int replicateAll(String origin, List<User> users);
 }
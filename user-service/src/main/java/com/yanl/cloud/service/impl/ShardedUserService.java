@@ -0,0 +1,314 @@
+package com.yanl.cloud.service.impl;
+
+import com.yanl.cloud.domain.CommonResult;
+import com.yanl.cloud.domain.User;
+import com.yanl.cloud.domain.UserBatch;
+import com.yanl.cloud.domain.UserOperation;
+import com.yanl.cloud.domain.UserPage;
+import com.yanl.cloud.domain.UserWriteResult;
+import com.yanl.cloud.service.UserService;
+import com.yanl.cloud.shard.UserShardRouter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * 按id分片的用户服务，user.shard.enabled=true 时替代UserServiceImpl对外提供服务
+ * 按id的操作转发到所在分片；批量查询按分片拆分后并行查询再合并；
+ * 按用户名查询、分页和前缀查询需要查询所有分片。
+ * 用户名只在分片内唯一；导出只包含本实例的数据。
+ * 查询时个别分片失败不影响其他分片的结果：批量查询返回这些分片的unavailableIds，分页和前缀查询返回partial的页
+ */
+@Slf4j
+@Service
+@Primary
+@ConditionalOnProperty(name = "user.shard.enabled", havingValue = "true")
+public class ShardedUserService implements UserService {
+
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    private static final ParameterizedTypeReference<CommonResult<UserWriteResult>> WRITE_RESULT_TYPE =
+            new ParameterizedTypeReference<CommonResult<UserWriteResult>>() {
+            };
+
+    private static final ParameterizedTypeReference<CommonResult<User>> USER_TYPE =
+            new ParameterizedTypeReference<CommonResult<User>>() {
+            };
+
+    private static final ParameterizedTypeReference<CommonResult<UserBatch>> BATCH_TYPE =
+            new ParameterizedTypeReference<CommonResult<UserBatch>>() {
+            };
+
+    private static final ParameterizedTypeReference<CommonResult<UserPage>> PAGE_TYPE =
+            new ParameterizedTypeReference<CommonResult<UserPage>>() {
+            };
+
+    private static final ParameterizedTypeReference<CommonResult<Integer>> COUNT_TYPE =
+            new ParameterizedTypeReference<CommonResult<Integer>>() {
+            };
+
+    @Autowired
+    @Qualifier("userServiceImpl")
+    private UserService localUserService;
+
+    @Autowired
+    private UserShardRouter userShardRouter;
+
+    @Override
+    public UserWriteResult create(User user) {
+        String shard = userShardRouter.ownerOf(user.getId());
+        if (isLocal(shard)) {
+            return localUserService.create(user);
+        }
+        return userShardRouter.call(shard, HttpMethod.POST, "/create", user, WRITE_RESULT_TYPE);
+    }
+
+    @Override
+    public User getUser(Long id) {
+        String shard = userShardRouter.ownerOf(id);
+        if (isLocal(shard)) {
+            return localUserService.getUser(id);
+        }
+        return userShardRouter.call(shard, HttpMethod.GET, "/{id}", null, USER_TYPE, id);
+    }
+
+    @Override
+    public UserWriteResult update(User user, Long expectedVersion) {
+        String shard = userShardRouter.ownerOf(user.getId());
+        if (isLocal(shard)) {
+            return localUserService.update(user, expectedVersion);
+        }
+        if (expectedVersion == null) {
+            return userShardRouter.call(shard, HttpMethod.POST, "/update", user, WRITE_RESULT_TYPE);
+        }
+        return userShardRouter.call(shard, HttpMethod.POST, "/update?expectedVersion={version}", user,
+                WRITE_RESULT_TYPE, expectedVersion);
+    }
+
+    @Override
+    public UserWriteResult delete(Long id) {
+        String shard = userShardRouter.ownerOf(id);
+        if (isLocal(shard)) {
+            return localUserService.delete(id);
+        }
+        return userShardRouter.call(shard, HttpMethod.POST, "/delete/{id}", null, WRITE_RESULT_TYPE, id);
+    }
+
+    @Override
+    public User getByUserName(String username) {
+        List<String> failedShards = new ArrayList<>();
+        for (User user : scatter(localService -> localService.getByUserName(username),
+                shard -> userShardRouter.call(shard, HttpMethod.GET, "/getUserByName?username={username}", null,
+                        USER_TYPE, username), failedShards)) {
+            if (user != null) {
+                return user;
+            }
+        }
+        // 用户可能在查询失败的分片上，不能当作不存在
+        if (!failedShards.isEmpty()) {
+            throw new IllegalStateException("分片实例不可用：" + failedShards);
+        }
+        return null;
+    }
+
+    @Override
+    public List<User> getUserByIds(List<Long> ids) {
+        return multiGet(ids).getUsers();
+    }
+
+    /**
+     * 按分片拆分id，各分片并行查询（本地分片在当前线程查询），结果按请求顺序合并，
+     * 查询失败的分片上的id放入unavailableIds
+     * @param ids
+     * @return
+     */
+    @Override
+    public UserBatch multiGet(List<Long> ids) {
+        Map<String, List<Long>> idsByShard = new LinkedHashMap<>();
+        for (Long id : ids) {
+            idsByShard.computeIfAbsent(userShardRouter.ownerOf(id), key -> new ArrayList<>()).add(id);
+        }
+        Map<String, CompletableFuture<UserBatch>> remote = new LinkedHashMap<>();
+        UserBatch local = null;
+        for (Map.Entry<String, List<Long>> entry : idsByShard.entrySet()) {
+            if (isLocal(entry.getKey())) {
+                continue;
+            }
+            remote.put(entry.getKey(), userShardRouter.async(() -> userShardRouter.call(entry.getKey(), HttpMethod.POST,
+                    "/getUserByIds", entry.getValue(), BATCH_TYPE)));
+        }
+        List<Long> localIds = idsByShard.get(userShardRouter.getLocalShard());
+        if (localIds != null) {
+            local = localUserService.multiGet(localIds);
+        }
+        Map<Long, User> found = new HashMap<>(ids.size() * 2);
+        if (local != null) {
+            local.getUsers().forEach(user -> found.put(user.getId(), user));
+        }
+        Set<Long> unavailable = new HashSet<>();
+        for (Map.Entry<String, CompletableFuture<UserBatch>> entry : remote.entrySet()) {
+            UserBatch batch = join(entry.getKey(), entry.getValue());
+            if (batch == null) {
+                unavailable.addAll(idsByShard.get(entry.getKey()));
+            } else {
+                batch.getUsers().forEach(user -> found.put(user.getId(), user));
+            }
+        }
+        List<User> users = new ArrayList<>(found.size());
+        List<Long> missingIds = new ArrayList<>();
+        List<Long> unavailableIds = new ArrayList<>(unavailable.size());
+        for (Long id : ids) {
+            User user = found.get(id);
+            if (user != null) {
+                users.add(user);
+            } else if (unavailable.contains(id)) {
+                unavailableIds.add(id);
+            } else {
+                missingIds.add(id);
+            }
+        }
+        return new UserBatch(users, missingIds, unavailableIds);
+    }
+
+    /**
+     * 各分片按同一游标各取一页，合并后取前limit个
+     */
+    @Override
+    public UserPage list(Long cursor, int limit) {
+        List<String> failedShards = new ArrayList<>();
+        List<UserPage> pages = scatter(localService -> localService.list(cursor, limit),
+                shard -> cursor == null
+                        ? userShardRouter.call(shard, HttpMethod.GET, "/list?limit={limit}", null, PAGE_TYPE, limit)
+                        : userShardRouter.call(shard, HttpMethod.GET, "/list?cursor={cursor}&limit={limit}", null,
+                        PAGE_TYPE, cursor, limit), failedShards);
+        return merge(pages, limit, Comparator.comparing(User::getId), user -> String.valueOf(user.getId()),
+                !failedShards.isEmpty());
+    }
+
+    @Override
+    public UserPage searchByUsernamePrefix(String prefix, String cursor, int limit) {
+        List<String> failedShards = new ArrayList<>();
+        List<UserPage> pages = scatter(localService -> localService.searchByUsernamePrefix(prefix, cursor, limit),
+                shard -> cursor == null
+                        ? userShardRouter.call(shard, HttpMethod.GET, "/search?prefix={prefix}&limit={limit}", null,
+                        PAGE_TYPE, prefix, limit)
+                        : userShardRouter.call(shard, HttpMethod.GET, "/search?prefix={prefix}&cursor={cursor}&limit={limit}",
+                        null, PAGE_TYPE, prefix, cursor, limit), failedShards);
+        return merge(pages, limit, Comparator.comparing(User::getUsername), User::getUsername, !failedShards.isEmpty());
+    }
+
+    private UserPage merge(List<UserPage> pages, int limit, Comparator<User> order, Function<User, String> cursorOf,
+                           boolean partial) {
+        List<User> users = new ArrayList<>();
+        boolean more = false;
+        for (UserPage page : pages) {
+            users.addAll(page.getUsers());
+            more |= page.getNextCursor() != null;
+        }
+        users.sort(order);
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        if (users.size() > pageSize) {
+            users = new ArrayList<>(users.subList(0, pageSize));
+            more = true;
+        }
+        String nextCursor = more && !users.isEmpty() ? cursorOf.apply(users.get(users.size() - 1)) : null;
+        return new UserPage(users, nextCursor, partial);
+    }
+
+    /**
+     * 按分片拆分后导入，各分片并行
+     */
+    @Override
+    public int importUsers(List<User> users) {
+        Map<String, List<User>> usersByShard = new LinkedHashMap<>();
+        for (User user : users) {
+            usersByShard.computeIfAbsent(userShardRouter.ownerOf(user.getId()), key -> new ArrayList<>()).add(user);
+        }
+        List<CompletableFuture<Integer>> remote = new ArrayList<>(usersByShard.size());
+        for (Map.Entry<String, List<User>> entry : usersByShard.entrySet()) {
+            if (!isLocal(entry.getKey())) {
+                remote.add(userShardRouter.async(() -> userShardRouter.call(entry.getKey(), HttpMethod.POST,
+                        "/import", entry.getValue(), COUNT_TYPE)));
+            }
+        }
+        List<User> localUsers = usersByShard.get(userShardRouter.getLocalShard());
+        int imported = localUsers == null ? 0 : localUserService.importUsers(localUsers);
+        for (CompletableFuture<Integer> future : remote) {
+            imported += future.join();
+        }
+        return imported;
+    }
+
+    @Override
+    public void exportUsers(Consumer<User> action) {
+        localUserService.exportUsers(action);
+    }
+
+    @Override
+    public UserWriteResult replicate(String origin, UserOperation operation, User user) {
+        return localUserService.replicate(origin, operation, user);
+    }
+
+    @Override
+    public int replicateAll(String origin, List<User> users) {
+        return localUserService.replicateAll(origin, users);
+    }
+
+    private boolean isLocal(String shard) {
+        return userShardRouter.getLocalShard().equals(shard);
+    }
+
+    /**
+     * 并行查询所有分片，本地分片在当前线程查询
+     * @param failedShards 查询失败的远程分片，其结果不在返回值中
+     */
+    private <T> List<T> scatter(Function<UserService, T> local, Function<String, T> remote, List<String> failedShards) {
+        Map<String, CompletableFuture<T>> futures = new LinkedHashMap<>();
+        for (String shard : userShardRouter.getShards()) {
+            if (!isLocal(shard)) {
+                futures.put(shard, userShardRouter.async(() -> remote.apply(shard)));
+            }
+        }
+        List<T> results = new ArrayList<>(futures.size() + 1);
+        results.add(local.apply(localUserService));
+        for (Map.Entry<String, CompletableFuture<T>> entry : futures.entrySet()) {
+            T result = join(entry.getKey(), entry.getValue());
+            if (result == null) {
+                failedShards.add(entry.getKey());
+            } else {
+                results.add(result);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 等待远程分片的结果，失败时返回null；等待时间受分片调用的读超时限制
+     */
+    private <T> T join(String shard, CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            log.warn("查询分片 {} 失败: {}", shard, e.getCause().toString());
+            return null;
+        }
+    }
+}
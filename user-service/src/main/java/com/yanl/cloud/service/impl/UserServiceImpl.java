@@ -1,69 +1,229 @@
 package com.yanl.cloud.service.impl;
 
 import com.yanl.cloud.domain.User;
+import com.yanl.cloud.domain.UserBatch;
+import com.yanl.cloud.domain.UserOperation;
+import com.yanl.cloud.domain.UserPage;
+import com.yanl.cloud.domain.UserWriteResult;
+import com.yanl.cloud.persistence.UserPersistence;
 import com.yanl.cloud.service.UserService;
+import com.yanl.cloud.store.UserStore;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
-import org.springframework.util.CollectionUtils;
 
 import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
+@Slf4j
 @Service
 public class UserServiceImpl implements UserService {
 
-    private List<User> userList;
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    /**
+     * 用户名和密码UTF-8编码后的最大字节数，预写日志、快照和offheap存储中字符串长度为short
+     */
+    public static final int MAX_FIELD_BYTES = Short.MAX_VALUE;
+
+    @Autowired
+    private UserStore userStore;
+
+    @Autowired
+    private UserPersistence userPersistence;
 
     @Override
-    public void create(User user) {
-        userList.add(user);
+    public UserWriteResult create(User user) {
+        if (!isValid(user)) {
+            return UserWriteResult.of(UserWriteResult.Status.INVALID);
+        }
+        return userPersistence.commit(UserOperation.CREATE, () -> userStore.insert(user));
     }
 
     @Override
     public User getUser(Long id) {
-        List<User> findUserList = userList.stream().filter(user -> user.getId().equals(id)).collect(Collectors.toList());
-        if(!CollectionUtils.isEmpty(findUserList)){
-            return findUserList.get(0);
+        return userStore.get(id);
+    }
+
+    @Override
+    public UserWriteResult update(User user, Long expectedVersion) {
+        if (!isValid(user)) {
+            return UserWriteResult.of(UserWriteResult.Status.INVALID);
         }
-        return null;
+        return userPersistence.commit(UserOperation.UPDATE, () -> userStore.update(user, expectedVersion));
+    }
+
+    @Override
+    public UserWriteResult delete(Long id) {
+        return userPersistence.commit(UserOperation.DELETE, () -> userStore.remove(id));
+    }
+
+    @Override
+    public User getByUserName(String username) {
+        return userStore.getByUsername(username);
     }
 
     @Override
-    public void update(User user) {
-        userList.stream().filter(userItem -> userItem.getId().equals(user.getId())).forEach(userItem -> {
-            userItem.setUsername(user.getUsername());
-            userItem.setPassword(user.getPassword());
-        });
+    public List<User> getUserByIds(List<Long> ids) {
+        return multiGet(ids).getUsers();
     }
 
+    /**
+     * 逐个id走索引查询，结果保持请求顺序，未找到的id单独返回
+     * @param ids
+     * @return
+     */
     @Override
-    public void delete(Long id) {
-        User user = getUser(id);
-        if(user != null){
-            userList.remove(user);
+    public UserBatch multiGet(List<Long> ids) {
+        List<User> users = new ArrayList<>(ids.size());
+        List<Long> missingIds = new ArrayList<>();
+        for (Long id : ids) {
+            User user = userStore.get(id);
+            if (user == null) {
+                missingIds.add(id);
+            } else {
+                users.add(user);
+            }
         }
+        return new UserBatch(users, missingIds, Collections.emptyList());
     }
 
     @Override
-    public User getByUserName(String username) {
-        List<User> findUserList = userList.stream().filter(userItem -> userItem.getUsername().equals(username)).collect(Collectors.toList());
-        if(!CollectionUtils.isEmpty(findUserList)){
-            return findUserList.get(0);
+    public UserPage list(Long cursor, int limit) {
+        List<Long> ids = userStore.idsAfter(cursor, pageSize(limit));
+        List<User> users = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            User user = userStore.get(id);
+            // 读取索引后用户可能已被删除
+            if (user != null) {
+                users.add(user);
+            }
         }
-        return null;
+        String nextCursor = ids.size() < pageSize(limit) ? null : String.valueOf(ids.get(ids.size() - 1));
+        return new UserPage(users, nextCursor, false);
     }
 
     @Override
-    public List<User> getUserByIds(List<Long> ids) {
-        return userList.stream().filter(userItem -> ids.contains(userItem.getId())).collect(Collectors.toList());
+    public UserPage searchByUsernamePrefix(String prefix, String cursor, int limit) {
+        List<String> usernames = userStore.usernamesWithPrefix(prefix, cursor, pageSize(limit));
+        List<User> users = new ArrayList<>(usernames.size());
+        for (String username : usernames) {
+            User user = userStore.getByUsername(username);
+            if (user != null) {
+                users.add(user);
+            }
+        }
+        String nextCursor = usernames.size() < pageSize(limit) ? null : usernames.get(usernames.size() - 1);
+        return new UserPage(users, nextCursor, false);
     }
 
+    private int pageSize(int limit) {
+        return Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+    }
+
+    @Override
+    public int importUsers(List<User> users) {
+        List<User> valid = users.stream().filter(UserServiceImpl::isValid).collect(Collectors.toList());
+        return userPersistence.commitAll(UserOperation.CREATE, () -> userStore.insertAll(valid)).size();
+    }
+
+    @Override
+    public void exportUsers(Consumer<User> action) {
+        userStore.forEach(action);
+    }
+
+    @Override
+    public UserWriteResult replicate(String origin, UserOperation operation, User user) {
+        if (!isValid(user)) {
+            return UserWriteResult.of(UserWriteResult.Status.INVALID);
+        }
+        return userPersistence.commit(origin, operation, () -> applyReplicated(operation, user));
+    }
+
+    @Override
+    public int replicateAll(String origin, List<User> users) {
+        return userPersistence.commitAll(origin, UserOperation.UPDATE, () -> {
+            List<User> applied = new ArrayList<>(users.size());
+            for (User user : users) {
+                if (!isValid(user)) {
+                    continue;
+                }
+                UserWriteResult result = applyReplicated(UserOperation.UPDATE, user);
+                if (result.isOk()) {
+                    applied.add(result.getUser());
+                }
+            }
+            return applied;
+        }).size();
+    }
+
+    /**
+     * 在提交锁内执行，此时没有其他写操作，读取本地版本后再写入是安全的
+     */
+    private UserWriteResult applyReplicated(UserOperation operation, User user) {
+        if (user.getId() == null || user.getVersion() == null
+                || (operation != UserOperation.DELETE && user.getUsername() == null)) {
+            // 冲突处理依赖版本号和用户名，缺少时无法判断新旧
+            log.warn("复制用户缺少id、版本号或用户名，忽略，id：{}，版本：{}", user.getId(), user.getVersion());
+            return UserWriteResult.of(UserWriteResult.Status.INVALID);
+        }
+        User local = userStore.get(user.getId());
+        if (operation == UserOperation.DELETE) {
+            if (local == null || local.getVersion() > user.getVersion()) {
+                return UserWriteResult.of(UserWriteResult.Status.VERSION_CONFLICT);
+            }
+            return userStore.remove(user.getId());
+        }
+        if (local != null && !isNewer(user, local)) {
+            return UserWriteResult.of(UserWriteResult.Status.VERSION_CONFLICT);
+        }
+        if (!userStore.restore(user)) {
+            log.warn("复制用户冲突，用户名已被占用，id：{}，用户名：{}", user.getId(), user.getUsername());
+            return UserWriteResult.of(UserWriteResult.Status.DUPLICATE);
+        }
+        return UserWriteResult.ok(userStore.get(user.getId()));
+    }
+
+    /**
+     * 写入存储之前校验，写入后才在日志中发现超长会导致存储与日志不一致
+     */
+    public static boolean isValid(User user) {
+        return fits(user.getUsername()) && fits(user.getPassword());
+    }
+
+    private static boolean fits(String value) {
+        // UTF-8每个char最多3个字节，大部分情况不需要编码
+        return value == null || value.length() * 3 <= MAX_FIELD_BYTES
+                || value.getBytes(StandardCharsets.UTF_8).length <= MAX_FIELD_BYTES;
+    }
+
+    private boolean isNewer(User incoming, User local) {
+        int compare = Long.compare(incoming.getVersion(), local.getVersion());
+        if (compare == 0) {
+            // 不同实例并发更新到相同版本时，按内容选择，保证所有实例选择同一个
+            compare = incoming.getUsername().compareTo(local.getUsername());
+            if (compare == 0) {
+                compare = String.valueOf(incoming.getPassword()).compareTo(String.valueOf(local.getPassword()));
+            }
+        }
+        return compare > 0;
+    }
+
+    /**
+     * 存储为空时（首次启动或未开启持久化）初始化测试数据
+     */
     @PostConstruct
     public void initData(){
-        userList = new ArrayList<>();
-        userList.add(new User(1L, "ly", "5211"));
-        userList.add(new User(2L, "zy", "5211"));
-        userList.add(new User(3L, "lyzzy", "5211"));
+        if (userStore.size() > 0) {
+            return;
+        }
+        create(new User(1L, "ly", "5211"));
+        create(new User(2L, "zy", "5211"));
+        create(new User(3L, "lyzzy", "5211"));
     }
 }
@@ -0,0 +1,231 @@
+package com.yanl.cloud.shard;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yanl.cloud.change.UserChangeFeed;
+import com.yanl.cloud.domain.CommonResult;
+import com.yanl.cloud.domain.User;
+import com.yanl.cloud.domain.UserOperation;
+import com.yanl.cloud.service.UserService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.cloud.client.discovery.event.HeartbeatEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 维护user-service实例组成的一致性哈希环，并负责访问其他分片，通过 user.shard.enabled=true 启用
+ * 实例列表来自Eureka，每次Eureka客户端刷新注册表（HeartbeatEvent）时检查是否变化；
+ * 本实例始终在环上，避免注册完成前把所有请求转发出去。
+ * 环变化后，本实例上不再属于自己的用户会迁移到新的所在分片（/user/shard/handoff），迁移完成前这部分用户在新分片上暂时查不到
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "user.shard.enabled", havingValue = "true")
+public class UserShardRouter {
+
+    private static final String SHARD_PATH = "/user/shard";
+
+    @Autowired
+    private DiscoveryClient discoveryClient;
+
+    @Autowired
+    private UserChangeFeed userChangeFeed;
+
+    @Autowired
+    @Qualifier("userServiceImpl")
+    private UserService localUserService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${spring.application.name}")
+    private String serviceId;
+
+    @Value("${user.shard.virtual-nodes:160}")
+    private int virtualNodes;
+
+    @Value("${user.shard.handoff-batch-size:500}")
+    private int handoffBatchSize;
+
+    @Value("${user.replication.enabled:false}")
+    private boolean replicationEnabled;
+
+    private volatile UserShardRing ring;
+
+    private volatile boolean handoffPending;
+
+    private volatile Map<String, String> shardUris = Collections.emptyMap();
+
+    private RestTemplate restTemplate;
+
+    private ExecutorService fanOutExecutor;
+
+    private ExecutorService handoffExecutor;
+
+    @PostConstruct
+    public void init() {
+        if (replicationEnabled) {
+            // 复制会把每个实例的写操作拉到所有实例上，与分片后每个实例只保存自己分片的用户相矛盾
+            throw new IllegalStateException("user.shard.enabled and user.replication.enabled cannot both be true");
+        }
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(2000);
+        requestFactory.setReadTimeout(10000);
+        restTemplate = new RestTemplate(requestFactory);
+        // Eureka依赖引入了jackson-dataformat-xml，默认会协商为XML，这里只使用JSON
+        restTemplate.setMessageConverters(Collections.singletonList(new MappingJackson2HttpMessageConverter(objectMapper)));
+        AtomicInteger threadNumber = new AtomicInteger();
+        fanOutExecutor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "user-shard-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        handoffExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "user-shard-handoff");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ring = new UserShardRing(Collections.singleton(getLocalShard()), virtualNodes);
+    }
+
+    @PreDestroy
+    public void close() {
+        fanOutExecutor.shutdownNow();
+        handoffExecutor.shutdownNow();
+    }
+
+    @EventListener(HeartbeatEvent.class)
+    public void refresh() {
+        Map<String, String> uris = new HashMap<>();
+        for (ServiceInstance instance : discoveryClient.getInstances(serviceId)) {
+            if (instance.getInstanceId() != null) {
+                uris.put(instance.getInstanceId(), instance.getUri().toString());
+            }
+        }
+        Set<String> nodes = new TreeSet<>(uris.keySet());
+        nodes.add(getLocalShard());
+        shardUris = uris;
+        if (!nodes.equals(ring.getNodes())) {
+            log.info("分片实例变化，当前实例：{}", nodes);
+            ring = new UserShardRing(nodes, virtualNodes);
+            handoffExecutor.execute(this::handoff);
+        } else if (handoffPending) {
+            handoffExecutor.execute(this::handoff);
+        }
+    }
+
+    public String getLocalShard() {
+        return userChangeFeed.getLocalOrigin();
+    }
+
+    public String ownerOf(Long id) {
+        return id == null ? getLocalShard() : ring.owner(id);
+    }
+
+    public boolean isLocal(Long id) {
+        return getLocalShard().equals(ownerOf(id));
+    }
+
+    public Set<String> getShards() {
+        return ring.getNodes();
+    }
+
+    /**
+     * 调用指定分片的内部接口（/user/shard下），shard为本实例时不应调用
+     */
+    public <T> T call(String shard, HttpMethod method, String path, Object body,
+                      ParameterizedTypeReference<CommonResult<T>> type, Object... uriVariables) {
+        String uri = shardUris.get(shard);
+        if (uri == null) {
+            throw new IllegalStateException("分片实例不可用：" + shard);
+        }
+        HttpEntity<Object> entity = body == null ? null : new HttpEntity<>(body);
+        CommonResult<T> result = restTemplate.exchange(uri + SHARD_PATH + path, method, entity, type, uriVariables).getBody();
+        return result == null ? null : result.getData();
+    }
+
+    public <T> CompletableFuture<T> async(Supplier<T> task) {
+        return CompletableFuture.supplyAsync(task, fanOutExecutor);
+    }
+
+    /**
+     * 把本实例上不属于自己的用户按所在分片分批发送过去，对方按版本号写入后，本地再按相同版本删除，
+     * 期间被更新过的用户版本更高，不会被删除，会在下一次迁移时重新发送
+     */
+    private void handoff() {
+        handoffPending = false;
+        // 先收集再发送，遍历存储期间不做写操作
+        Map<String, List<User>> moving = new HashMap<>();
+        localUserService.exportUsers(user -> {
+            String owner = ownerOf(user.getId());
+            if (!owner.equals(getLocalShard())) {
+                moving.computeIfAbsent(owner, key -> new ArrayList<>()).add(user);
+            }
+        });
+        int moved = 0;
+        for (Map.Entry<String, List<User>> entry : moving.entrySet()) {
+            List<User> users = entry.getValue();
+            for (int from = 0; from < users.size(); from += handoffBatchSize) {
+                moved += sendHandoff(entry.getKey(), users.subList(from, Math.min(from + handoffBatchSize, users.size())));
+            }
+        }
+        if (moved > 0) {
+            log.info("分片迁移完成，迁出用户数：{}", moved);
+        }
+    }
+
+    private int sendHandoff(String owner, List<User> batch) {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        List<Long> accepted;
+        try {
+            accepted = call(owner, HttpMethod.POST, "/handoff?origin={origin}", batch,
+                    new ParameterizedTypeReference<CommonResult<List<Long>>>() {
+                    }, getLocalShard());
+        } catch (Exception e) {
+            log.warn("向分片 {} 迁移用户失败，等待下次刷新时重试: {}", owner, e.toString());
+            handoffPending = true;
+            return 0;
+        }
+        Set<Long> acceptedIds = new HashSet<>(accepted);
+        int moved = 0;
+        for (User user : batch) {
+            if (!acceptedIds.contains(user.getId())) {
+                log.warn("分片 {} 未接收用户 {}，保留在本地", owner, user.getId());
+                continue;
+            }
+            if (localUserService.replicate(getLocalShard(), UserOperation.DELETE, user).isOk()) {
+                moved++;
+            }
+        }
+        return moved;
+    }
+}
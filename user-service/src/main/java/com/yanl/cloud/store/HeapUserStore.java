@@ -0,0 +1,203 @@
+package com.yanl.cloud.store;
+
+import com.yanl.cloud.domain.User;
+import com.yanl.cloud.domain.UserWriteResult;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * 基于ConcurrentHashMap的堆内用户存储
+ * users为id主键索引，usernameIndex为username唯一索引，读操作O(1)且不加锁；
+ * sortedIndex为id和username的有序索引，用于分页和前缀查询
+ * 记录不可变，更新时通过ConcurrentHashMap.replace比较并替换整条记录：
+ * 用户名不变的更新不加锁，只有新增、删除、改名这类需要同时维护多个索引的操作通过writeLock串行化
+ * 默认的存储实现，user.store.type=heap
+ */
+@Component
+@ConditionalOnProperty(name = "user.store.type", havingValue = "heap", matchIfMissing = true)
+public class HeapUserStore implements UserStore {
+
+    private final ConcurrentHashMap<Long, UserRecord> users = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<String, Long> usernameIndex = new ConcurrentHashMap<>();
+
+    private final SortedUserIndex sortedIndex = new SortedUserIndex();
+
+    private final Object writeLock = new Object();
+
+    @Override
+    public UserWriteResult insert(User user) {
+        synchronized (writeLock) {
+            UserRecord record = doInsert(user, 1);
+            return record == null ? UserWriteResult.of(UserWriteResult.Status.DUPLICATE) : UserWriteResult.ok(record.toUser());
+        }
+    }
+
+    @Override
+    public List<User> insertAll(List<User> batch) {
+        List<User> inserted = new ArrayList<>(batch.size());
+        synchronized (writeLock) {
+            for (User user : batch) {
+                UserRecord record = doInsert(user, 1);
+                if (record != null) {
+                    inserted.add(record.toUser());
+                }
+            }
+        }
+        return inserted;
+    }
+
+    private UserRecord doInsert(User user, long version) {
+        if (user.getId() == null || user.getUsername() == null) {
+            return null;
+        }
+        if (users.containsKey(user.getId()) || usernameIndex.containsKey(user.getUsername())) {
+            return null;
+        }
+        UserRecord record = new UserRecord(user.getId(), user.getUsername(), user.getPassword(), version);
+        users.put(record.id, record);
+        usernameIndex.put(record.username, record.id);
+        sortedIndex.add(record.id, record.username);
+        return record;
+    }
+
+    @Override
+    public User get(Long id) {
+        if (id == null) {
+            return null;
+        }
+        UserRecord record = users.get(id);
+        return record == null ? null : record.toUser();
+    }
+
+    @Override
+    public User getByUsername(String username) {
+        if (username == null) {
+            return null;
+        }
+        Long id = usernameIndex.get(username);
+        if (id == null) {
+            return null;
+        }
+        // 两次读取之间用户可能已被改名，需再次校验
+        UserRecord record = users.get(id);
+        return record != null && username.equals(record.username) ? record.toUser() : null;
+    }
+
+    @Override
+    public UserWriteResult update(User user, Long expectedVersion) {
+        if (user.getId() == null || user.getUsername() == null) {
+            return UserWriteResult.of(UserWriteResult.Status.NOT_FOUND);
+        }
+        while (true) {
+            UserRecord current = users.get(user.getId());
+            if (current == null) {
+                return UserWriteResult.of(UserWriteResult.Status.NOT_FOUND);
+            }
+            if (expectedVersion != null && current.version != expectedVersion) {
+                return UserWriteResult.of(UserWriteResult.Status.VERSION_CONFLICT);
+            }
+            if (!current.username.equals(user.getUsername())) {
+                return rename(user, expectedVersion);
+            }
+            UserRecord next = new UserRecord(current.id, current.username, user.getPassword(), current.version + 1);
+            if (users.replace(current.id, current, next)) {
+                return UserWriteResult.ok(next.toUser());
+            }
+            // 被其他写操作抢先，重新读取后再比较
+        }
+    }
+
+    private UserWriteResult rename(User user, Long expectedVersion) {
+        synchronized (writeLock) {
+            while (true) {
+                UserRecord current = users.get(user.getId());
+                if (current == null) {
+                    return UserWriteResult.of(UserWriteResult.Status.NOT_FOUND);
+                }
+                if (expectedVersion != null && current.version != expectedVersion) {
+                    return UserWriteResult.of(UserWriteResult.Status.VERSION_CONFLICT);
+                }
+                Long owner = usernameIndex.get(user.getUsername());
+                if (owner != null && !owner.equals(user.getId())) {
+                    return UserWriteResult.of(UserWriteResult.Status.DUPLICATE);
+                }
+                UserRecord next = new UserRecord(current.id, user.getUsername(), user.getPassword(), current.version + 1);
+                // 不改名的更新不持有writeLock，仍需比较并替换
+                if (!users.replace(current.id, current, next)) {
+                    continue;
+                }
+                if (!current.username.equals(next.username)) {
+                    usernameIndex.remove(current.username);
+                    usernameIndex.put(next.username, next.id);
+                    sortedIndex.rename(current.username, next.username);
+                }
+                return UserWriteResult.ok(next.toUser());
+            }
+        }
+    }
+
+    @Override
+    public UserWriteResult remove(Long id) {
+        if (id == null) {
+            return UserWriteResult.of(UserWriteResult.Status.NOT_FOUND);
+        }
+        synchronized (writeLock) {
+            UserRecord old = users.remove(id);
+            if (old == null) {
+                return UserWriteResult.of(UserWriteResult.Status.NOT_FOUND);
+            }
+            usernameIndex.remove(old.username);
+            sortedIndex.remove(id, old.username);
+            return UserWriteResult.ok(old.toUser());
+        }
+    }
+
+    @Override
+    public boolean restore(User user) {
+        long version = user.getVersion() == null ? 1 : user.getVersion();
+        synchronized (writeLock) {
+            UserRecord current = users.get(user.getId());
+            if (current == null) {
+                return doInsert(user, version) != null;
+            }
+            Long owner = usernameIndex.get(user.getUsername());
+            if (owner != null && !owner.equals(user.getId())) {
+                return false;
+            }
+            UserRecord next = new UserRecord(current.id, user.getUsername(), user.getPassword(), version);
+            users.put(next.id, next);
+            if (!current.username.equals(next.username)) {
+                usernameIndex.remove(current.username);
+                usernameIndex.put(next.username, next.id);
+                sortedIndex.rename(current.username, next.username);
+            }
+            return true;
+        }
+    }
+
+    @Override
+    public List<Long> idsAfter(Long afterId, int limit) {
+        return sortedIndex.idsAfter(afterId, limit);
+    }
+
+    @Override
+    public List<String> usernamesWithPrefix(String prefix, String afterUsername, int limit) {
+        return sortedIndex.usernamesWithPrefix(prefix, afterUsername, limit);
+    }
+
+    @Override
+    public int size() {
+        return users.size();
+    }
+
+    @Override
+    public void forEach(Consumer<User> action) {
+        users.values().forEach(record -> action.accept(record.toUser()));
+    }
+}
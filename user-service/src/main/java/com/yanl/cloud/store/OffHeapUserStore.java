@@ -0,0 +1,582 @@
+package com.yanl.cloud.store;
+
+import com.yanl.cloud.domain.User;
+import com.yanl.cloud.domain.UserWriteResult;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * 堆外用户存储，通过 user.store.type=offheap 启用
+ *
+ * 用户数据按 [long id][long 版本号][short 用户名长度][用户名][short 密码长度][密码] 的格式追加写入堆外的 arena，
+ * 记录写入后不再修改，更新时追加新记录并在写锁内比较版本号后切换索引，
+ * 堆内只保留两张开放寻址表：
+ * id索引 long[] ids + int[] idRefs，按id定位记录偏移量，不需要装箱；
+ * 用户名索引 int[] nameHashes + int[] nameRefs，按hash定位后再比较arena中的用户名字节。
+ * User对象只在读取时才创建。
+ * 分页和前缀查询使用的有序索引（SortedUserIndex）在堆内，不需要分页和前缀查询时可以通过 user.store.sorted-index=false 关闭，
+ * 关闭后分页和前缀查询返回501。
+ *
+ * 内存占用实测（100万用户，用户名"user"+id，密码8个ASCII字符，JDK8压缩指针，benchmark中的UserStoreFootprint）：
+ * HeapUserStore每个用户堆内约 328 字节（含有序索引）；
+ * 本实现开启有序索引时堆内约 201 字节，关闭时约 41 字节；堆外每条记录约 38 字节，arena按倍数扩容，实际分配约 64 字节。
+ *
+ * 更新和删除产生的旧记录在垃圾超过arena一半时压缩回收；单个arena上限2GB。
+ * 读操作持有读锁，写操作持有写锁；forEach分批持有读锁，调用action时不持有锁。
+ */
+@Component
+@ConditionalOnProperty(name = "user.store.type", havingValue = "offheap")
+public class OffHeapUserStore implements UserStore {
+
+    private static final int EMPTY = -1;
+
+    private static final int DELETED = -2;
+
+    private static final int VERSION_OFFSET = 8;
+
+    private static final int NAME_LENGTH_OFFSET = 16;
+
+    private static final int NAME_OFFSET = 18;
+
+    /**
+     * 记录中除用户名和密码外的固定长度：id、版本号、两个长度字段
+     */
+    private static final int HEADER_LENGTH = 20;
+
+    /**
+     * forEach每次在读锁内读取的记录数
+     */
+    private static final int FOR_EACH_CHUNK = 1024;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final SortedUserIndex sortedIndex;
+
+    private ByteBuffer arena;
+
+    private int garbageBytes;
+
+    private long[] ids;
+
+    private int[] idRefs;
+
+    private int idUsed;
+
+    private int[] nameHashes;
+
+    private int[] nameRefs;
+
+    private int nameUsed;
+
+    private int size;
+
+    public OffHeapUserStore(@Value("${user.store.initial-capacity:1024}") int initialCapacity,
+                            @Value("${user.store.sorted-index:true}") boolean sortedIndexEnabled) {
+        sortedIndex = sortedIndexEnabled ? new SortedUserIndex() : null;
+        int capacity = tableSizeFor(initialCapacity * 2);
+        arena = ByteBuffer.allocateDirect(Math.max(initialCapacity * 32, 4096));
+        ids = new long[capacity];
+        idRefs = newRefs(capacity);
+        nameHashes = new int[capacity];
+        nameRefs = newRefs(capacity);
+    }
+
+    @Override
+    public UserWriteResult insert(User user) {
+        lock.writeLock().lock();
+        try {
+            int ref = doInsert(user, 1);
+            return ref < 0 ? UserWriteResult.of(UserWriteResult.Status.DUPLICATE) : UserWriteResult.ok(read(ref));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<User> insertAll(List<User> batch) {
+        List<User> inserted = new ArrayList<>(batch.size());
+        lock.writeLock().lock();
+        try {
+            for (User user : batch) {
+                int ref = doInsert(user, 1);
+                if (ref >= 0) {
+                    inserted.add(read(ref));
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return inserted;
+    }
+
+    /**
+     * @return 新记录的偏移量，id或用户名已存在时返回-1
+     */
+    private int doInsert(User user, long version) {
+        if (user.getId() == null || user.getUsername() == null) {
+            return -1;
+        }
+        byte[] name = user.getUsername().getBytes(StandardCharsets.UTF_8);
+        byte[] password = passwordBytes(user);
+        if (findId(user.getId()) >= 0 || findName(name, hash(name)) >= 0) {
+            return -1;
+        }
+        ensureArena(name, password);
+        int ref = append(user.getId(), version, name, password);
+        putId(user.getId(), ref);
+        putName(name, ref);
+        if (sortedIndex != null) {
+            sortedIndex.add(user.getId(), user.getUsername());
+        }
+        size++;
+        return ref;
+    }
+
+    @Override
+    public User get(Long id) {
+        if (id == null) {
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            int slot = findId(id);
+            return slot < 0 ? null : read(idRefs[slot]);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public User getByUsername(String username) {
+        if (username == null) {
+            return null;
+        }
+        byte[] name = username.getBytes(StandardCharsets.UTF_8);
+        lock.readLock().lock();
+        try {
+            int slot = findName(name, hash(name));
+            return slot < 0 ? null : read(nameRefs[slot]);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 写锁内比较版本号并追加新记录
+     */
+    @Override
+    public UserWriteResult update(User user, Long expectedVersion) {
+        if (user.getId() == null || user.getUsername() == null) {
+            return UserWriteResult.of(UserWriteResult.Status.NOT_FOUND);
+        }
+        lock.writeLock().lock();
+        try {
+            int idSlot = findId(user.getId());
+            if (idSlot < 0) {
+                return UserWriteResult.of(UserWriteResult.Status.NOT_FOUND);
+            }
+            long version = arena.getLong(idRefs[idSlot] + VERSION_OFFSET);
+            if (expectedVersion != null && version != expectedVersion) {
+                return UserWriteResult.of(UserWriteResult.Status.VERSION_CONFLICT);
+            }
+            int ref = replace(user, version + 1);
+            return ref < 0 ? UserWriteResult.of(UserWriteResult.Status.DUPLICATE) : UserWriteResult.ok(read(ref));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean restore(User user) {
+        long version = user.getVersion() == null ? 1 : user.getVersion();
+        lock.writeLock().lock();
+        try {
+            if (findId(user.getId()) < 0) {
+                return doInsert(user, version) >= 0;
+            }
+            return replace(user, version) >= 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 为已存在的用户追加一条新记录并更新索引，需持有写锁
+     * @return 新记录的偏移量，用户名被其他用户占用时返回-1
+     */
+    private int replace(User user, long version) {
+        byte[] name = user.getUsername().getBytes(StandardCharsets.UTF_8);
+        byte[] password = passwordBytes(user);
+        // 先确保arena空间，压缩会重建索引，必须在查找槽位之前完成
+        ensureArena(name, password);
+        int idSlot = findId(user.getId());
+        int nameSlot = findName(name, hash(name));
+        if (nameSlot >= 0 && arena.getLong(nameRefs[nameSlot]) != user.getId()) {
+            return -1;
+        }
+        int oldRef = idRefs[idSlot];
+        if (sortedIndex != null) {
+            sortedIndex.rename(readString(oldRef + NAME_OFFSET, arena.getShort(oldRef + NAME_LENGTH_OFFSET)), user.getUsername());
+        }
+        removeName(oldRef);
+        garbageBytes += recordLength(oldRef);
+        int ref = append(user.getId(), version, name, password);
+        idRefs[idSlot] = ref;
+        putName(name, ref);
+        return ref;
+    }
+
+    @Override
+    public UserWriteResult remove(Long id) {
+        if (id == null) {
+            return UserWriteResult.of(UserWriteResult.Status.NOT_FOUND);
+        }
+        lock.writeLock().lock();
+        try {
+            int slot = findId(id);
+            if (slot < 0) {
+                return UserWriteResult.of(UserWriteResult.Status.NOT_FOUND);
+            }
+            int ref = idRefs[slot];
+            User old = read(ref);
+            idRefs[slot] = DELETED;
+            if (sortedIndex != null) {
+                sortedIndex.remove(id, old.getUsername());
+            }
+            removeName(ref);
+            garbageBytes += recordLength(ref);
+            size--;
+            return UserWriteResult.ok(old);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Long> idsAfter(Long afterId, int limit) {
+        checkSortedIndex();
+        return sortedIndex.idsAfter(afterId, limit);
+    }
+
+    @Override
+    public List<String> usernamesWithPrefix(String prefix, String afterUsername, int limit) {
+        checkSortedIndex();
+        return sortedIndex.usernamesWithPrefix(prefix, afterUsername, limit);
+    }
+
+    @Override
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 先在读锁内复制所有存活的id，再按批在读锁内读取记录，释放读锁后才调用action，
+     * action较慢（如导出时写入HTTP响应）也不会阻塞写操作；遍历期间删除的用户跳过，新增的用户不可见
+     */
+    @Override
+    public void forEach(Consumer<User> action) {
+        long[] liveIds;
+        lock.readLock().lock();
+        try {
+            liveIds = new long[size];
+            int n = 0;
+            for (int i = 0; i < idRefs.length; i++) {
+                if (idRefs[i] >= 0) {
+                    liveIds[n++] = ids[i];
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        List<User> chunk = new ArrayList<>(FOR_EACH_CHUNK);
+        for (int from = 0; from < liveIds.length; from += FOR_EACH_CHUNK) {
+            int to = Math.min(from + FOR_EACH_CHUNK, liveIds.length);
+            lock.readLock().lock();
+            try {
+                for (int i = from; i < to; i++) {
+                    int slot = findId(liveIds[i]);
+                    if (slot >= 0) {
+                        chunk.add(read(idRefs[slot]));
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            chunk.forEach(action);
+            chunk.clear();
+        }
+    }
+
+    private void checkSortedIndex() {
+        if (sortedIndex == null) {
+            throw new SortedIndexDisabledException();
+        }
+    }
+
+    private User read(int ref) {
+        long id = arena.getLong(ref);
+        int nameLength = arena.getShort(ref + NAME_LENGTH_OFFSET);
+        String username = readString(ref + NAME_OFFSET, nameLength);
+        int passwordOffset = ref + NAME_OFFSET + nameLength;
+        int passwordLength = arena.getShort(passwordOffset);
+        String password = passwordLength < 0 ? null : readString(passwordOffset + 2, passwordLength);
+        return new User(id, username, password, arena.getLong(ref + VERSION_OFFSET));
+    }
+
+    private String readString(int offset, int length) {
+        byte[] bytes = new byte[length];
+        // 读锁下可能有多个线程并发读取，使用独立的position
+        ByteBuffer view = arena.duplicate();
+        view.position(offset);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private int recordLength(int ref) {
+        int nameLength = arena.getShort(ref + NAME_LENGTH_OFFSET);
+        int passwordLength = arena.getShort(ref + NAME_OFFSET + nameLength);
+        return HEADER_LENGTH + nameLength + Math.max(passwordLength, 0);
+    }
+
+    /**
+     * 追加一条记录，返回记录在arena中的偏移量；密码为null时长度记为-1
+     * 调用前需先通过ensureArena保证空间
+     */
+    private int append(long id, long version, byte[] name, byte[] password) {
+        int ref = arena.position();
+        arena.putLong(id);
+        arena.putLong(version);
+        arena.putShort((short) name.length);
+        arena.put(name);
+        if (password == null) {
+            arena.putShort((short) -1);
+        } else {
+            arena.putShort((short) password.length);
+            arena.put(password);
+        }
+        return ref;
+    }
+
+    private void ensureArena(byte[] name, byte[] password) {
+        if (name.length > Short.MAX_VALUE || (password != null && password.length > Short.MAX_VALUE)) {
+            throw new IllegalArgumentException("username or password too long");
+        }
+        int length = HEADER_LENGTH + name.length + (password == null ? 0 : password.length);
+        if (garbageBytes > arena.position() / 2) {
+            compact();
+        }
+        if (arena.remaining() >= length) {
+            return;
+        }
+        long required = (long) arena.position() + length;
+        long capacity = Math.max((long) arena.capacity() * 2, required);
+        if (required > Integer.MAX_VALUE) {
+            throw new IllegalStateException("off-heap user arena is full");
+        }
+        ByteBuffer grown = ByteBuffer.allocateDirect((int) Math.min(capacity, Integer.MAX_VALUE));
+        arena.flip();
+        grown.put(arena);
+        arena = grown;
+    }
+
+    /**
+     * 按id索引把存活记录复制到新的arena，并重建两张索引表
+     */
+    private void compact() {
+        ByteBuffer old = arena;
+        int[] oldRefs = idRefs;
+        long[] oldIds = ids;
+        arena = ByteBuffer.allocateDirect(old.capacity());
+        ids = new long[oldIds.length];
+        idRefs = newRefs(oldIds.length);
+        nameHashes = new int[oldIds.length];
+        nameRefs = newRefs(oldIds.length);
+        idUsed = 0;
+        nameUsed = 0;
+        garbageBytes = 0;
+        for (int i = 0; i < oldRefs.length; i++) {
+            if (oldRefs[i] < 0) {
+                continue;
+            }
+            int from = oldRefs[i];
+            int nameLength = old.getShort(from + NAME_LENGTH_OFFSET);
+            int passwordLength = old.getShort(from + NAME_OFFSET + nameLength);
+            int length = HEADER_LENGTH + nameLength + Math.max(passwordLength, 0);
+            int ref = arena.position();
+            for (int j = 0; j < length; j++) {
+                arena.put(old.get(from + j));
+            }
+            putId(oldIds[i], ref);
+            byte[] name = new byte[nameLength];
+            for (int j = 0; j < nameLength; j++) {
+                name[j] = old.get(from + NAME_OFFSET + j);
+            }
+            putName(name, ref);
+        }
+    }
+
+    private int findId(long id) {
+        int mask = ids.length - 1;
+        for (int i = mix(Long.hashCode(id)) & mask; ; i = (i + 1) & mask) {
+            int ref = idRefs[i];
+            if (ref == EMPTY) {
+                return -1;
+            }
+            if (ref != DELETED && ids[i] == id) {
+                return i;
+            }
+        }
+    }
+
+    private void putId(long id, int ref) {
+        if ((idUsed + 1) * 2 > ids.length) {
+            rehashIds();
+        }
+        int mask = ids.length - 1;
+        int i = mix(Long.hashCode(id)) & mask;
+        while (idRefs[i] >= 0) {
+            i = (i + 1) & mask;
+        }
+        if (idRefs[i] == EMPTY) {
+            idUsed++;
+        }
+        ids[i] = id;
+        idRefs[i] = ref;
+    }
+
+    private void rehashIds() {
+        long[] oldIds = ids;
+        int[] oldRefs = idRefs;
+        int capacity = size * 4 > oldIds.length ? oldIds.length * 2 : oldIds.length;
+        ids = new long[capacity];
+        idRefs = newRefs(capacity);
+        idUsed = 0;
+        for (int i = 0; i < oldRefs.length; i++) {
+            if (oldRefs[i] >= 0) {
+                putId(oldIds[i], oldRefs[i]);
+            }
+        }
+    }
+
+    private int findName(byte[] name, int hash) {
+        int mask = nameHashes.length - 1;
+        for (int i = mix(hash) & mask; ; i = (i + 1) & mask) {
+            int ref = nameRefs[i];
+            if (ref == EMPTY) {
+                return -1;
+            }
+            if (ref != DELETED && nameHashes[i] == hash && nameEquals(ref, name)) {
+                return i;
+            }
+        }
+    }
+
+    private boolean nameEquals(int ref, byte[] name) {
+        if (arena.getShort(ref + NAME_LENGTH_OFFSET) != name.length) {
+            return false;
+        }
+        for (int i = 0; i < name.length; i++) {
+            if (arena.get(ref + NAME_OFFSET + i) != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void putName(byte[] name, int ref) {
+        if ((nameUsed + 1) * 2 > nameHashes.length) {
+            rehashNames();
+        }
+        int hash = hash(name);
+        int mask = nameHashes.length - 1;
+        int i = mix(hash) & mask;
+        while (nameRefs[i] >= 0) {
+            i = (i + 1) & mask;
+        }
+        if (nameRefs[i] == EMPTY) {
+            nameUsed++;
+        }
+        nameHashes[i] = hash;
+        nameRefs[i] = ref;
+    }
+
+    private void removeName(int ref) {
+        int nameLength = arena.getShort(ref + NAME_LENGTH_OFFSET);
+        byte[] name = new byte[nameLength];
+        for (int i = 0; i < nameLength; i++) {
+            name[i] = arena.get(ref + NAME_OFFSET + i);
+        }
+        int slot = findName(name, hash(name));
+        if (slot >= 0) {
+            nameRefs[slot] = DELETED;
+        }
+    }
+
+    private void rehashNames() {
+        int[] oldHashes = nameHashes;
+        int[] oldRefs = nameRefs;
+        int capacity = size * 4 > oldHashes.length ? oldHashes.length * 2 : oldHashes.length;
+        nameHashes = new int[capacity];
+        nameRefs = newRefs(capacity);
+        nameUsed = 0;
+        int mask = capacity - 1;
+        for (int i = 0; i < oldRefs.length; i++) {
+            if (oldRefs[i] < 0) {
+                continue;
+            }
+            int j = mix(oldHashes[i]) & mask;
+            while (nameRefs[j] >= 0) {
+                j = (j + 1) & mask;
+            }
+            nameHashes[j] = oldHashes[i];
+            nameRefs[j] = oldRefs[i];
+            nameUsed++;
+        }
+    }
+
+    private static byte[] passwordBytes(User user) {
+        return user.getPassword() == null ? null : user.getPassword().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int hash(byte[] bytes) {
+        int h = 1;
+        for (byte b : bytes) {
+            h = 31 * h + b;
+        }
+        return h;
+    }
+
+    private static int mix(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static int[] newRefs(int capacity) {
+        int[] refs = new int[capacity];
+        Arrays.fill(refs, EMPTY);
+        return refs;
+    }
+
+    private static int tableSizeFor(int n) {
+        int capacity = 16;
+        while (capacity < n) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+}
@@ -0,0 +1,11 @@
+package com.yanl.cloud.store;
+
+/**
+ * user.store.sorted-index=false时调用分页或前缀查询
+ */
+public class SortedIndexDisabledException extends RuntimeException {
+
+    public SortedIndexDisabledException() {
+        super("sorted index is disabled, set user.store.sorted-index=true");
+    }
+}
@@ -0,0 +1,61 @@
+package com.yanl.cloud.store;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * 有序索引，用于按id分页和按用户名前缀查询
+ * 基于跳表，读操作不加锁，分页时只遍历当前页的数据；写操作由所属的UserStore在写锁内调用
+ */
+class SortedUserIndex {
+
+    private final ConcurrentSkipListSet<Long> ids = new ConcurrentSkipListSet<>();
+
+    private final ConcurrentSkipListSet<String> usernames = new ConcurrentSkipListSet<>();
+
+    void add(Long id, String username) {
+        ids.add(id);
+        usernames.add(username);
+    }
+
+    void rename(String oldUsername, String newUsername) {
+        if (!oldUsername.equals(newUsername)) {
+            usernames.remove(oldUsername);
+            usernames.add(newUsername);
+        }
+    }
+
+    void remove(Long id, String username) {
+        ids.remove(id);
+        usernames.remove(username);
+    }
+
+    List<Long> idsAfter(Long afterId, int limit) {
+        NavigableSet<Long> tail = afterId == null ? ids : ids.tailSet(afterId, false);
+        List<Long> page = new ArrayList<>(limit);
+        Iterator<Long> iterator = tail.iterator();
+        while (page.size() < limit && iterator.hasNext()) {
+            page.add(iterator.next());
+        }
+        return page;
+    }
+
+    List<String> usernamesWithPrefix(String prefix, String afterUsername, int limit) {
+        NavigableSet<String> tail = afterUsername == null || afterUsername.compareTo(prefix) < 0
+                ? usernames.tailSet(prefix, true)
+                : usernames.tailSet(afterUsername, false);
+        List<String> page = new ArrayList<>(limit);
+        Iterator<String> iterator = tail.iterator();
+        while (page.size() < limit && iterator.hasNext()) {
+            String username = iterator.next();
+            if (!username.startsWith(prefix)) {
+                break;
+            }
+            page.add(username);
+        }
+        return page;
+    }
+}
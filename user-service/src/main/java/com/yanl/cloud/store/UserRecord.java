@@ -0,0 +1,28 @@
+package com.yanl.cloud.store;
+
+import com.yanl.cloud.domain.User;
+
+/**
+ * 存储内部的不可变用户记录，更新时整体替换，读取时复制为User返回
+ */
+final class UserRecord {
+
+    final long id;
+
+    final String username;
+
+    final String password;
+
+    final long version;
+
+    UserRecord(long id, String username, String password, long version) {
+        this.id = id;
+        this.username = username;
+        this.password = password;
+        this.version = version;
+    }
+
+    User toUser() {
+        return new User(id, username, password, version);
+    }
+}
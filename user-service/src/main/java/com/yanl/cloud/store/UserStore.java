@@ -0,0 +1,79 @@
+package com.yanl.cloud.store;
+
+import com.yanl.cloud.domain.User;
+import com.yanl.cloud.domain.UserWriteResult;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 用户存储，主键为id，username唯一
+ * 内部保存不可变的版本化记录，读操作返回副本；读操作不加锁，写操作由实现类保证线程安全
+ */
+public interface UserStore {
+
+    /**
+     * 新增用户，版本号从1开始
+     * @param user
+     * @return id或username已存在时返回DUPLICATE
+     */
+    UserWriteResult insert(User user);
+
+    /**
+     * 批量新增，整批只加一次写锁
+     * @param users
+     * @return 实际新增成功的用户
+     */
+    List<User> insertAll(List<User> users);
+
+    User get(Long id);
+
+    User getByUsername(String username);
+
+    /**
+     * 更新用户，版本号加1，版本校验与替换是原子的（compare-and-swap）
+     * @param user
+     * @param expectedVersion 期望的当前版本，为null时不校验
+     * @return 用户不存在返回NOT_FOUND，username已被其他用户占用返回DUPLICATE，版本不一致返回VERSION_CONFLICT
+     */
+    UserWriteResult update(User user, Long expectedVersion);
+
+    /**
+     * 删除用户
+     * @param id
+     * @return 成功时返回被删除的用户，不存在时返回NOT_FOUND
+     */
+    UserWriteResult remove(Long id);
+
+    /**
+     * 按给定的版本号直接写入（不存在则新增），用于日志回放
+     * @param user
+     * @return username被其他用户占用时返回false
+     */
+    boolean restore(User user);
+
+    int size();
+
+    /**
+     * 按id升序分页
+     * @param afterId 上一页最后一个id，为null时从头开始
+     * @param limit
+     * @return 本页的id
+     */
+    List<Long> idsAfter(Long afterId, int limit);
+
+    /**
+     * 按用户名升序查询指定前缀的用户名
+     * @param prefix
+     * @param afterUsername 上一页最后一个用户名，为null时从头开始
+     * @param limit
+     * @return 本页的用户名
+     */
+    List<String> usernamesWithPrefix(String prefix, String afterUsername, int limit);
+
+    /**
+     * 遍历所有用户，遍历期间的写操作可能可见也可能不可见
+     * @param action
+     */
+    void forEach(Consumer<User> action);
+}
@@ -0,0 +1,144 @@
+package com.yanl.cloud.controller;
+
+import com.yanl.cloud.change.UserChangeFeed;
+import com.yanl.cloud.domain.User;
+import com.yanl.cloud.domain.UserChange;
+import com.yanl.cloud.domain.UserOperation;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.cloud.client.serviceregistry.Registration;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UserChangeControllerTest {
+
+    private UserChangeFeed feed;
+
+    private UserChangeController controller;
+
+    @BeforeEach
+    void setUp() {
+        feed = new UserChangeFeed(100, new StaticListableBeanFactory().getBeanProvider(Registration.class));
+        controller = new UserChangeController();
+        ReflectionTestUtils.setField(controller, "userChangeFeed", feed);
+        ReflectionTestUtils.setField(controller, "streamTimeout", 60000L);
+        ReflectionTestUtils.setField(controller, "subscriberBuffer", 2);
+        ReflectionTestUtils.setField(controller, "stallTimeout", 200L);
+        ReflectionTestUtils.setField(controller, "senderThreads", 1);
+        controller.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        controller.close();
+        feed.close();
+    }
+
+    @Test
+    void stalledSubscribersAreCompletedWithoutNewEvents() throws Exception {
+        CountDownLatch sendStarted = new CountDownLatch(1);
+        CountDownLatch releaseSend = new CountDownLatch(1);
+        CountDownLatch blockedCompleted = new CountDownLatch(1);
+        CountDownLatch queuedCompleted = new CountDownLatch(1);
+        // 第一个订阅者的发送阻塞，占住唯一的发送线程
+        SseEmitter blocked = controller.stream(0, null, null);
+        initialize(blocked, () -> {
+            sendStarted.countDown();
+            releaseSend.await();
+        }, blockedCompleted);
+        // 第二个订阅者的发送任务只能排队
+        SseEmitter queued = controller.stream(0, null, null);
+        initialize(queued, () -> {
+        }, queuedCompleted);
+
+        publish(1);
+        assertThat(sendStarted.await(5, TimeUnit.SECONDS)).isTrue();
+        // 填满两个订阅者的缓冲区，之后不再有新事件
+        publish(2);
+        publish(3);
+
+        // 排队的订阅者不占用发送线程，由定时检查直接结束
+        assertThat(queuedCompleted.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(blockedCompleted.getCount()).isEqualTo(1);
+        assertThat(subscribers()).isEmpty();
+
+        // 阻塞的写入返回（写超时）后由发送线程结束
+        releaseSend.countDown();
+        assertThat(blockedCompleted.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // 发送线程已释放，新的订阅者可以正常收到事件
+        CountDownLatch received = new CountDownLatch(1);
+        SseEmitter next = controller.stream(0, null, null);
+        initialize(next, received::countDown, new CountDownLatch(1));
+        publish(4);
+        assertThat(received.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    void malformedLastEventIdFallsBackToAfter() throws Exception {
+        publish(1);
+        publish(2);
+        CountDownLatch received = new CountDownLatch(1);
+        List<Object> sent = new CopyOnWriteArrayList<>();
+        SseEmitter emitter = controller.stream(1, null, "epoch:not-a-number");
+        initialize(emitter, received::countDown, new CountDownLatch(1), sent);
+        assertThat(received.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(sent).filteredOn(UserChange.class::isInstance)
+                .extracting("sequence").containsExactly(2L);
+    }
+
+    private void publish(long id) {
+        feed.publish(UserOperation.CREATE, new User(id, "user" + id, "p"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Object> subscribers() {
+        return (List<Object>) ReflectionTestUtils.getField(controller, "subscribers");
+    }
+
+    private void initialize(ResponseBodyEmitter emitter, Send onSend, CountDownLatch completed) throws Exception {
+        initialize(emitter, onSend, completed, new ArrayList<>());
+    }
+
+    /**
+     * 模拟容器把emitter和响应关联起来，send和complete的行为由测试控制
+     */
+    private void initialize(ResponseBodyEmitter emitter, Send onSend, CountDownLatch completed, List<Object> sent) throws Exception {
+        Class<?> handlerType = Class.forName(ResponseBodyEmitter.class.getName() + "$Handler");
+        Object handler = Proxy.newProxyInstance(handlerType.getClassLoader(), new Class<?>[]{handlerType}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "send":
+                    sent.add(args[0]);
+                    onSend.run();
+                    break;
+                case "complete":
+                case "completeWithError":
+                    completed.countDown();
+                    break;
+                default:
+            }
+            return null;
+        });
+        Method initialize = ReflectionUtils.findMethod(ResponseBodyEmitter.class, "initialize", handlerType);
+        ReflectionUtils.makeAccessible(initialize);
+        initialize.invoke(emitter, handler);
+    }
+
+    private interface Send {
+        void run() throws Exception;
+    }
+}
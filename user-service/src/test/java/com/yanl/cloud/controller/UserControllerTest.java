@@ -0,0 +1,96 @@
+package com.yanl.cloud.controller;
+
+import com.yanl.cloud.change.UserChangeFeed;
+import com.yanl.cloud.domain.User;
+import com.yanl.cloud.persistence.UserPersistence;
+import com.yanl.cloud.service.impl.UserServiceImpl;
+import com.yanl.cloud.store.HeapUserStore;
+import com.yanl.cloud.store.UserStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.cloud.client.serviceregistry.Registration;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class UserControllerTest {
+
+    private final UserStore store = new HeapUserStore();
+
+    private final UserServiceImpl userService = new UserServiceImpl();
+
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        UserPersistence persistence = new UserPersistence();
+        ReflectionTestUtils.setField(persistence, "userStore", store);
+        ReflectionTestUtils.setField(persistence, "userChangeFeed",
+                new UserChangeFeed(16, new StaticListableBeanFactory().getBeanProvider(Registration.class)));
+        ReflectionTestUtils.setField(userService, "userStore", store);
+        ReflectionTestUtils.setField(userService, "userPersistence", persistence);
+        UserController controller = new UserController();
+        ReflectionTestUtils.setField(controller, "userService", userService);
+        mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+        // 创建后版本为1
+        userService.create(new User(1L, "ly", "5211"));
+    }
+
+    @Test
+    void malformedIfMatchIsBadRequest() throws Exception {
+        update("{\"id\":1,\"username\":\"ly\",\"password\":\"new\"}", "\"abc\"").andExpect(status().isBadRequest());
+        update("{\"id\":1,\"username\":\"ly\",\"password\":\"new\"}", "\"1\", W/x").andExpect(status().isBadRequest());
+        assertThat(store.get(1L).getVersion()).isEqualTo(1L);
+    }
+
+    @Test
+    void tagListWithoutCurrentVersionIsPreconditionFailed() throws Exception {
+        update("{\"id\":1,\"username\":\"ly\",\"password\":\"new\"}", "\"5\", \"6\"")
+                .andExpect(status().isPreconditionFailed());
+        assertThat(store.get(1L).getPassword()).isEqualTo("5211");
+    }
+
+    @Test
+    void weakTagNeverMatches() throws Exception {
+        update("{\"id\":1,\"username\":\"ly\",\"password\":\"new\"}", "W/\"1\"")
+                .andExpect(status().isPreconditionFailed());
+        assertThat(store.get(1L).getPassword()).isEqualTo("5211");
+    }
+
+    @Test
+    void bodyVersionMismatchIsConflict() throws Exception {
+        // *不限制版本，但请求体中的version仍然校验
+        update("{\"id\":1,\"username\":\"ly\",\"password\":\"new\",\"version\":7}", "*")
+                .andExpect(status().isConflict());
+        // If-Match匹配当前版本，请求体中的version不一致
+        update("{\"id\":1,\"username\":\"ly\",\"password\":\"new\",\"version\":7}", "\"1\"")
+                .andExpect(status().isConflict());
+        assertThat(store.get(1L).getPassword()).isEqualTo("5211");
+    }
+
+    @Test
+    void tagListContainingCurrentVersionUpdates() throws Exception {
+        update("{\"id\":1,\"username\":\"ly\",\"password\":\"new\"}", "\"9\", W/\"3\", \"1\"")
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"2\""))
+                .andExpect(jsonPath("$.data.version").value(2));
+        assertThat(store.get(1L).getPassword()).isEqualTo("new");
+    }
+
+    private ResultActions update(String body, String ifMatch) throws Exception {
+        return mockMvc.perform(post("/user/update")
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_JSON)
+                .header("If-Match", ifMatch)
+                .content(body));
+    }
+}
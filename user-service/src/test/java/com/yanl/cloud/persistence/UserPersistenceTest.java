@@ -0,0 +1,143 @@
+package com.yanl.cloud.persistence;
+
+import com.yanl.cloud.change.UserChangeFeed;
+import com.yanl.cloud.domain.User;
+import com.yanl.cloud.domain.UserOperation;
+import com.yanl.cloud.store.HeapUserStore;
+import com.yanl.cloud.store.UserStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.cloud.client.serviceregistry.Registration;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class UserPersistenceTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void replaysJournalAfterCrash() throws IOException {
+        UserStore store = new HeapUserStore();
+        UserPersistence persistence = open(store);
+        for (long id = 1; id <= 100; id++) {
+            User user = new User(id, "user" + id, "p");
+            persistence.commit(UserOperation.CREATE, () -> store.insert(user));
+        }
+        persistence.commit(UserOperation.UPDATE, () -> store.update(new User(7L, "renamed", "p2"), null));
+        persistence.commit(UserOperation.DELETE, () -> store.remove(8L));
+        // 不调用close，模拟进程崩溃：没有快照，只能依靠日志恢复
+
+        UserStore recovered = new HeapUserStore();
+        open(recovered);
+        assertThat(recovered.size()).isEqualTo(99);
+        assertThat(recovered.get(7L).getUsername()).isEqualTo("renamed");
+        assertThat(recovered.get(7L).getVersion()).isEqualTo(2L);
+        assertThat(recovered.getByUsername("user7")).isNull();
+        assertThat(recovered.get(8L)).isNull();
+    }
+
+    @Test
+    void truncatesTornTailAndKeepsAppending() throws IOException {
+        UserStore store = new HeapUserStore();
+        UserPersistence persistence = open(store);
+        persistence.commit(UserOperation.CREATE, () -> store.insert(new User(1L, "user1", "p")));
+        persistence.commit(UserOperation.CREATE, () -> store.insert(new User(2L, "user2", "p")));
+        Path segment = UserJournal.segmentPath(dir, 0);
+        long intact = Files.size(segment);
+
+        // 一条crc不匹配的完整记录，后面再跟一条只写了一半的记录
+        ByteArrayOutputStream corrupt = new ByteArrayOutputStream();
+        UserRecords.write(corrupt, UserOperation.CREATE, new User(3L, "user3", "p"));
+        byte[] bytes = corrupt.toByteArray();
+        bytes[bytes.length - 1] ^= 0x7f;
+        ByteArrayOutputStream torn = new ByteArrayOutputStream();
+        UserRecords.write(torn, UserOperation.CREATE, new User(4L, "user4", "p"));
+        try (OutputStream out = Files.newOutputStream(segment, StandardOpenOption.APPEND)) {
+            out.write(bytes);
+            out.write(Arrays.copyOf(torn.toByteArray(), torn.size() / 2));
+        }
+
+        UserStore recovered = new HeapUserStore();
+        UserPersistence reopened = open(recovered);
+        assertThat(Files.size(segment)).isEqualTo(intact);
+        assertThat(recovered.size()).isEqualTo(2);
+        assertThat(recovered.get(3L)).isNull();
+
+        // 截断之后的写入进入新的日志段，再次恢复时能完整回放
+        reopened.commit(UserOperation.CREATE, () -> recovered.insert(new User(5L, "user5", "p")));
+        UserStore again = new HeapUserStore();
+        open(again);
+        assertThat(again.size()).isEqualTo(3);
+        assertThat(again.get(5L).getUsername()).isEqualTo("user5");
+    }
+
+    @Test
+    void failedJournalRejectsWritesBeforeTouchingStoreOrFeed() throws IOException {
+        UserStore store = new HeapUserStore();
+        UserPersistence persistence = open(store);
+        persistence.commit(UserOperation.CREATE, () -> store.insert(new User(1L, "user1", "p")));
+        UserChangeFeed feed = (UserChangeFeed) ReflectionTestUtils.getField(persistence, "userChangeFeed");
+        long published = feed.read(null, 0, 10).getLastSequence();
+        // 模拟fsync失败
+        Object journal = ReflectionTestUtils.getField(persistence, "journal");
+        ReflectionTestUtils.setField(journal, "failure", new IOException("disk full"));
+
+        assertThatThrownBy(() -> persistence.commit(UserOperation.UPDATE, () -> store.update(new User(1L, "renamed", "p"), null)))
+                .isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> persistence.commitAll(UserOperation.CREATE,
+                () -> Arrays.asList(store.insert(new User(2L, "user2", "p")).getUser())))
+                .isInstanceOf(IllegalStateException.class);
+        assertThat(store.get(1L).getUsername()).isEqualTo("user1");
+        assertThat(store.get(2L)).isNull();
+        assertThat(feed.read(null, 0, 10).getLastSequence()).isEqualTo(published);
+    }
+
+    @Test
+    void recordsRejectStringsLongerThanShortLength() throws IOException {
+        char[] max = new char[Short.MAX_VALUE];
+        Arrays.fill(max, 'a');
+        String longest = new String(max);
+        Path file = dir.resolve("records.dat");
+        try (OutputStream out = Files.newOutputStream(file)) {
+            UserRecords.write(out, UserOperation.CREATE, new User(1L, longest, null));
+            assertThatThrownBy(() -> UserRecords.write(out, UserOperation.CREATE, new User(2L, longest + "a", "p")))
+                    .isInstanceOf(IllegalArgumentException.class);
+            // 多字节字符按UTF-8字节数计算
+            assertThatThrownBy(() -> UserRecords.write(out, UserOperation.CREATE, new User(3L, "u", longest.substring(1) + "中")))
+                    .isInstanceOf(IllegalArgumentException.class);
+        }
+        List<User> users = new ArrayList<>();
+        long end = UserRecords.read(file, 0, record -> users.add(record.user));
+        assertThat(end).isEqualTo(Files.size(file));
+        assertThat(users).hasSize(1);
+        assertThat(users.get(0).getUsername()).isEqualTo(longest);
+        assertThat(users.get(0).getPassword()).isNull();
+    }
+
+    private UserPersistence open(UserStore store) throws IOException {
+        ObjectProvider<Registration> registration = new StaticListableBeanFactory().getBeanProvider(Registration.class);
+        UserPersistence persistence = new UserPersistence();
+        ReflectionTestUtils.setField(persistence, "userStore", store);
+        ReflectionTestUtils.setField(persistence, "userChangeFeed", new UserChangeFeed(16, registration));
+        ReflectionTestUtils.setField(persistence, "enabled", true);
+        ReflectionTestUtils.setField(persistence, "dir", dir.toString());
+        ReflectionTestUtils.setField(persistence, "snapshotIntervalSeconds", 3600L);
+        persistence.recover();
+        return persistence;
+    }
+}
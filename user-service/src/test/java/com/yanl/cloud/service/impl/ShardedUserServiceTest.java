@@ -0,0 +1,113 @@
+package com.yanl.cloud.service.impl;
+
+import com.yanl.cloud.domain.User;
+import com.yanl.cloud.domain.UserBatch;
+import com.yanl.cloud.domain.UserPage;
+import com.yanl.cloud.service.UserService;
+import com.yanl.cloud.shard.UserShardRouter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ShardedUserServiceTest {
+
+    private static final List<String> SHARDS = Arrays.asList("a", "b", "c");
+
+    private final ShardedUserService service = new ShardedUserService();
+
+    @BeforeEach
+    void setUp() {
+        // 分片a为本实例，b不可用，c只保存了用户2；id按 id%3 分配到分片
+        UserService local = Mockito.mock(UserService.class, invocation -> {
+            switch (invocation.getMethod().getName()) {
+                case "multiGet":
+                    return batch(invocation.getArgument(0), 3L);
+                case "list":
+                    return new UserPage(Collections.singletonList(user(3L)), null, false);
+                default:
+                    return null;
+            }
+        });
+        UserShardRouter router = Mockito.mock(UserShardRouter.class, invocation -> {
+            switch (invocation.getMethod().getName()) {
+                case "getLocalShard":
+                    return "a";
+                case "getShards":
+                    return new LinkedHashSet<>(SHARDS);
+                case "ownerOf":
+                    return SHARDS.get((int) ((Long) invocation.getArgument(0) % 3));
+                case "async":
+                    return CompletableFuture.supplyAsync(invocation.<Supplier<?>>getArgument(0));
+                case "call":
+                    if ("b".equals(invocation.getArgument(0))) {
+                        throw new ResourceAccessException("connect timed out");
+                    }
+                    String path = invocation.getArgument(2);
+                    if (path.startsWith("/getUserByIds")) {
+                        return batch(invocation.getArgument(3), 2L);
+                    }
+                    if (path.startsWith("/list")) {
+                        return new UserPage(Collections.singletonList(user(2L)), null, false);
+                    }
+                    return null;
+                default:
+                    return null;
+            }
+        });
+        ReflectionTestUtils.setField(service, "localUserService", local);
+        ReflectionTestUtils.setField(service, "userShardRouter", router);
+    }
+
+    @Test
+    void multiGetReportsIdsOfFailedShardAsUnavailable() {
+        UserBatch batch = service.multiGet(Arrays.asList(3L, 1L, 2L, 4L, 5L));
+        assertThat(batch.getUsers()).extracting(User::getId).containsExactly(3L, 2L);
+        assertThat(batch.getMissingIds()).containsExactly(5L);
+        assertThat(batch.getUnavailableIds()).containsExactly(1L, 4L);
+    }
+
+    @Test
+    void listReturnsPartialPageWhenShardFails() {
+        UserPage page = service.list(null, 10);
+        assertThat(page.getUsers()).extracting(User::getId).containsExactly(2L, 3L);
+        assertThat(page.isPartial()).isTrue();
+        assertThat(page.getNextCursor()).isNull();
+    }
+
+    @Test
+    void getByUserNameFailsInsteadOfNotFoundWhenShardFails() {
+        assertThatThrownBy(() -> service.getByUserName("missing"))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("b");
+    }
+
+    private static UserBatch batch(List<Long> ids, Long existing) {
+        List<User> users = new ArrayList<>();
+        List<Long> missingIds = new ArrayList<>();
+        for (Long id : ids) {
+            if (id.equals(existing)) {
+                users.add(user(id));
+            } else {
+                missingIds.add(id);
+            }
+        }
+        return new UserBatch(users, missingIds, Collections.emptyList());
+    }
+
+    private static User user(Long id) {
+        return new User(id, "user" + id, "p");
+    }
+}
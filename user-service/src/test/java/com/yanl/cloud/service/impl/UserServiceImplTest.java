@@ -0,0 +1,63 @@
+package com.yanl.cloud.service.impl;
+
+import com.yanl.cloud.change.UserChangeFeed;
+import com.yanl.cloud.domain.User;
+import com.yanl.cloud.domain.UserOperation;
+import com.yanl.cloud.domain.UserWriteResult;
+import com.yanl.cloud.persistence.UserPersistence;
+import com.yanl.cloud.store.HeapUserStore;
+import com.yanl.cloud.store.UserStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.cloud.client.serviceregistry.Registration;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UserServiceImplTest {
+
+    private final UserStore store = new HeapUserStore();
+
+    private final UserServiceImpl service = new UserServiceImpl();
+
+    @BeforeEach
+    void setUp() {
+        // 未开启持久化时commit只修改存储和发布事件
+        UserPersistence persistence = new UserPersistence();
+        ReflectionTestUtils.setField(persistence, "userStore", store);
+        ReflectionTestUtils.setField(persistence, "userChangeFeed",
+                new UserChangeFeed(16, new StaticListableBeanFactory().getBeanProvider(Registration.class)));
+        ReflectionTestUtils.setField(service, "userStore", store);
+        ReflectionTestUtils.setField(service, "userPersistence", persistence);
+        service.create(new User(1L, "ly", "5211"));
+    }
+
+    @Test
+    void replicateRejectsRecordsWithoutVersion() {
+        assertThat(service.replicate("peer", UserOperation.UPDATE, new User(1L, "ly", "new")).getStatus())
+                .isEqualTo(UserWriteResult.Status.INVALID);
+        assertThat(service.replicate("peer", UserOperation.DELETE, new User(1L, "ly", "new")).getStatus())
+                .isEqualTo(UserWriteResult.Status.INVALID);
+        assertThat(service.replicate("peer", UserOperation.UPDATE, new User(1L, null, "new", 5L)).getStatus())
+                .isEqualTo(UserWriteResult.Status.INVALID);
+        assertThat(service.getUser(1L).getPassword()).isEqualTo("5211");
+
+        int applied = service.replicateAll("peer", Arrays.asList(new User(2L, "zy", "p"), new User(3L, "lyzzy", "p", 1L)));
+        assertThat(applied).isEqualTo(1);
+        assertThat(service.getUser(2L)).isNull();
+        assertThat(service.getUser(3L).getVersion()).isEqualTo(1L);
+    }
+
+    @Test
+    void replicateKeepsNewerVersion() {
+        assertThat(service.replicate("peer", UserOperation.UPDATE, new User(1L, "ly", "v3", 3L)).isOk()).isTrue();
+        assertThat(service.replicate("peer", UserOperation.UPDATE, new User(1L, "ly", "v2", 2L)).getStatus())
+                .isEqualTo(UserWriteResult.Status.VERSION_CONFLICT);
+        assertThat(service.getUser(1L).getPassword()).isEqualTo("v3");
+        assertThat(service.replicate("peer", UserOperation.DELETE, new User(1L, "ly", "v3", 3L)).isOk()).isTrue();
+        assertThat(service.getUser(1L)).isNull();
+    }
+}
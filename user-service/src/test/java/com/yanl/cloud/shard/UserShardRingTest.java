@@ -0,0 +1,76 @@
+package com.yanl.cloud.shard;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UserShardRingTest {
+
+    /**
+     * ribbon-service、feign-service中的UserShardRingTest使用同一个文件
+     */
+    private static final Path VECTOR = Paths.get("src/test/resources/shard/user-shard-ring-vector.txt");
+
+    @Test
+    void matchesSharedVector() throws IOException {
+        int virtualNodes = 0;
+        List<String> nodes = Collections.emptyList();
+        Map<Long, String> expected = new HashMap<>();
+        for (String line : Files.readAllLines(VECTOR, StandardCharsets.UTF_8)) {
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            if (line.startsWith("virtual-nodes=")) {
+                virtualNodes = Integer.parseInt(line.substring("virtual-nodes=".length()));
+            } else if (line.startsWith("nodes=")) {
+                nodes = Arrays.asList(line.substring("nodes=".length()).split(","));
+            } else {
+                String[] fields = line.split(" ");
+                expected.put(Long.parseLong(fields[0]), fields[1]);
+            }
+        }
+        assertThat(expected).isNotEmpty();
+        UserShardRing ring = new UserShardRing(nodes, virtualNodes);
+        expected.forEach((id, owner) -> assertThat(ring.owner(id)).as("owner of %d", id).isEqualTo(owner));
+        // 节点顺序不影响结果
+        List<String> reversed = new ArrayList<>(nodes);
+        Collections.reverse(reversed);
+        UserShardRing same = new UserShardRing(reversed, virtualNodes);
+        expected.forEach((id, owner) -> assertThat(same.owner(id)).isEqualTo(owner));
+    }
+
+    @Test
+    void emptyRingHasNoOwner() {
+        assertThat(new UserShardRing(Collections.emptyList(), 160).owner(1L)).isNull();
+    }
+
+    @Test
+    void removingNodeOnlyMovesItsIds() {
+        List<String> nodes = Arrays.asList("a", "b", "c", "d");
+        UserShardRing before = new UserShardRing(nodes, 160);
+        UserShardRing after = new UserShardRing(Arrays.asList("a", "b", "c"), 160);
+        int moved = 0;
+        for (long id = 1; id <= 10000; id++) {
+            String owner = before.owner(id);
+            if ("d".equals(owner)) {
+                moved++;
+            } else {
+                assertThat(after.owner(id)).isEqualTo(owner);
+            }
+        }
+        // 每个实例大约分到1/4
+        assertThat(moved).isBetween(1500, 3500);
+    }
+}
@@ -0,0 +1,101 @@
+package com.yanl.cloud.store;
+
+import com.yanl.cloud.domain.User;
+import com.yanl.cloud.domain.UserWriteResult;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class OffHeapUserStoreTest {
+
+    @Test
+    void rehashKeepsAllUsersReachable() {
+        OffHeapUserStore store = new OffHeapUserStore(4, true);
+        for (long id = 1; id <= 5000; id++) {
+            assertThat(store.insert(new User(id, "user" + id, "p" + id)).isOk()).isTrue();
+        }
+        assertThat(store.size()).isEqualTo(5000);
+        for (long id = 1; id <= 5000; id++) {
+            assertThat(store.get(id).getUsername()).isEqualTo("user" + id);
+            assertThat(store.getByUsername("user" + id).getId()).isEqualTo(id);
+        }
+        assertThat(store.insert(new User(1L, "other", "p")).getStatus()).isEqualTo(UserWriteResult.Status.DUPLICATE);
+        assertThat(store.insert(new User(9999L, "user1", "p")).getStatus()).isEqualTo(UserWriteResult.Status.DUPLICATE);
+    }
+
+    @Test
+    void compactionKeepsLatestRecordsAndIndexes() {
+        OffHeapUserStore store = new OffHeapUserStore(16, true);
+        for (long id = 1; id <= 200; id++) {
+            store.insert(new User(id, "user" + id, "p"));
+        }
+        // 反复更新和改名产生大量垃圾，触发多次压缩
+        for (int round = 1; round <= 20; round++) {
+            for (long id = 1; id <= 200; id++) {
+                UserWriteResult result = store.update(new User(id, "user" + id + "-" + round, "p" + round), null);
+                assertThat(result.isOk()).isTrue();
+            }
+        }
+        for (long id = 1; id <= 200; id += 2) {
+            assertThat(store.remove(id).isOk()).isTrue();
+        }
+        assertThat(store.size()).isEqualTo(100);
+        for (long id = 1; id <= 200; id++) {
+            User user = store.get(id);
+            if (id % 2 == 1) {
+                assertThat(user).isNull();
+                assertThat(store.getByUsername("user" + id + "-20")).isNull();
+            } else {
+                assertThat(user.getUsername()).isEqualTo("user" + id + "-20");
+                assertThat(user.getPassword()).isEqualTo("p20");
+                assertThat(user.getVersion()).isEqualTo(21L);
+                assertThat(store.getByUsername("user" + id + "-20").getId()).isEqualTo(id);
+                assertThat(store.getByUsername("user" + id + "-19")).isNull();
+            }
+        }
+        // 被删除和改名释放的用户名可以重新使用
+        assertThat(store.insert(new User(1L, "user2-19", null)).isOk()).isTrue();
+        assertThat(store.get(1L).getPassword()).isNull();
+        assertThat(store.idsAfter(null, 3)).containsExactly(1L, 2L, 4L);
+    }
+
+    @Test
+    void updateChecksExpectedVersion() {
+        OffHeapUserStore store = new OffHeapUserStore(16, true);
+        store.insert(new User(1L, "ly", "p"));
+        assertThat(store.update(new User(1L, "ly", "q"), 2L).getStatus()).isEqualTo(UserWriteResult.Status.VERSION_CONFLICT);
+        assertThat(store.update(new User(1L, "ly", "q"), 1L).getUser().getVersion()).isEqualTo(2L);
+    }
+
+    @Test
+    void forEachDoesNotHoldLockWhileCallingAction() {
+        OffHeapUserStore store = new OffHeapUserStore(16, true);
+        for (long id = 1; id <= 3000; id++) {
+            store.insert(new User(id, "user" + id, "p"));
+        }
+        List<Long> visited = new ArrayList<>();
+        store.forEach(user -> {
+            if (visited.isEmpty()) {
+                // action执行期间其他线程的写操作不被阻塞；遍历开始后删除的用户不再返回
+                CompletableFuture<UserWriteResult> write = CompletableFuture.supplyAsync(() -> store.remove(3000L));
+                assertThat(write).succeedsWithin(1, TimeUnit.SECONDS);
+            }
+            visited.add(user.getId());
+        });
+        assertThat(visited).hasSize(2999).doesNotContain(3000L).doesNotHaveDuplicates();
+    }
+
+    @Test
+    void pagingFailsWhenSortedIndexDisabled() {
+        OffHeapUserStore store = new OffHeapUserStore(16, false);
+        store.insert(new User(1L, "ly", "p"));
+        assertThatThrownBy(() -> store.idsAfter(null, 10)).isInstanceOf(SortedIndexDisabledException.class);
+        assertThatThrownBy(() -> store.usernamesWithPrefix("l", null, 10)).isInstanceOf(SortedIndexDisabledException.class);
+    }
+}